@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.failure.RuleFailureParser;
+import com.palantir.tslint.services.Bridge;
+import com.palantir.tslint.services.Request;
+
+/**
+ * Measures the latency of a request to a node process which answers immediately, which is the
+ * overhead the bridge adds to every lint.
+ * <p>
+ * The node process runs a stub which speaks the bridge protocol but returns canned failures
+ * instead of running TSLint, so Node.js has to be on the PATH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BridgeRoundTripBenchmark {
+
+    @Param({ "0", "100", "10000" })
+    public int failureCount;
+
+    private File stubFile;
+    private Bridge bridge;
+    private RuleFailureParser parser;
+    private List<String> paths;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.stubFile = File.createTempFile("stub-bridge", ".js");
+        Resources.asByteSource(Resources.getResource(BridgeRoundTripBenchmark.class, "stub-bridge.js"))
+            .copyTo(Files.asByteSink(this.stubFile));
+
+        this.bridge = new Bridge(this.stubFile, 0);
+        this.parser = new RuleFailureParser();
+        this.paths = Payloads.paths(50);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.bridge.dispose();
+        this.stubFile.delete();
+    }
+
+    @Benchmark
+    public Map<String, List<RuleFailure>> lintBatch() {
+        return this.bridge.call(new Request("lintBatch", this.paths, this.failureCount), this.parser);
+    }
+}
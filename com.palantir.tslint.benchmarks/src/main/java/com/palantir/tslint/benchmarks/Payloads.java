@@ -0,0 +1,89 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Builds bridge responses shaped like the ones TSLint produces.
+ */
+final class Payloads {
+
+    private static final String[] RULE_NAMES = {
+            "no-unused-variable",
+            "quotemark",
+            "max-line-length",
+            "typedef",
+            "no-consecutive-blank-lines"
+    };
+
+    private Payloads() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the JSON of a lint batch response with the failures spread evenly over the files.
+     */
+    public static String ruleFailures(int fileCount, int failureCount) {
+        Map<String, List<Object>> failuresByPath = Maps.newLinkedHashMap();
+        for (int i = 0; i < fileCount; i++) {
+            failuresByPath.put(path(i), Lists.newArrayList());
+        }
+
+        for (int i = 0; i < failureCount; i++) {
+            String path = path(i % fileCount);
+            int line = i / fileCount;
+
+            failuresByPath.get(path).add(ImmutableMap.of(
+                "name", path,
+                "failure", "Failure number " + i + " of rule " + RULE_NAMES[i % RULE_NAMES.length],
+                "ruleName", RULE_NAMES[i % RULE_NAMES.length],
+                "startPosition", position(line, 4),
+                "endPosition", position(line, 20)));
+        }
+
+        try {
+            return new ObjectMapper().writeValueAsString(failuresByPath);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static List<String> paths(int fileCount) {
+        List<String> paths = Lists.newArrayList();
+        for (int i = 0; i < fileCount; i++) {
+            paths.add(path(i));
+        }
+
+        return paths;
+    }
+
+    private static String path(int index) {
+        return "/workspace/project/src/module" + (index / 10) + "/file" + index + ".ts";
+    }
+
+    private static Map<String, Integer> position(int line, int character) {
+        return ImmutableMap.of("position", line * 80 + character, "line", line, "character", character);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.palantir.tslint.services.Request;
+
+/**
+ * Measures encoding the requests which are written to the bridge.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestSerializationBenchmark {
+
+    @Param({ "1", "50" })
+    public int fileCount;
+
+    private ObjectMapper mapper;
+    private List<String> paths;
+    private String contents;
+
+    @Setup
+    public void setUp() {
+        this.mapper = new ObjectMapper();
+        this.paths = Payloads.paths(this.fileCount);
+
+        StringBuilder contents = new StringBuilder();
+        for (int i = 0; i < this.fileCount * 100; i++) {
+            contents.append("    var value").append(i).append(" = \"line ").append(i).append("\";\n");
+        }
+        this.contents = contents.toString();
+    }
+
+    @Benchmark
+    public String lintBatch() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(new Request("lintBatch", this.paths));
+    }
+
+    @Benchmark
+    public String lintContents() throws JsonProcessingException {
+        return this.mapper.writeValueAsString(new Request("lintContents", this.paths.get(0), this.contents));
+    }
+}
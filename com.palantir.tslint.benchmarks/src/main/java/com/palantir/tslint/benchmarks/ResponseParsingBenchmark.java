@@ -0,0 +1,149 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.failure.RuleFailureParser;
+
+/**
+ * Measures decoding a lint batch response into rule failures.
+ * <p>
+ * {@link #framed()} is what the bridge does; the other benchmarks are the alternatives it
+ * replaced and are kept as baselines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    private static final String RESULT_PREFIX = "RESULT 1: ";
+    private static final String FILE_RESULT_PREFIX = "RESULT: ";
+    private static final TypeReference<Map<String, List<RuleFailure>>> RULE_FAILURES_TYPE =
+            new TypeReference<Map<String, List<RuleFailure>>>() {};
+
+    @Param({ "0", "100", "10000" })
+    public int failureCount;
+
+    private ObjectMapper mapper;
+    private JsonFactory factory;
+    private RuleFailureParser parser;
+    private String line;
+    private String json;
+    private byte[] frame;
+    private Map<String, String> fileLines;
+
+    @Setup
+    public void setUp() {
+        this.mapper = new ObjectMapper();
+        this.factory = this.mapper.getFactory();
+        this.parser = new RuleFailureParser();
+        this.json = Payloads.ruleFailures(50, this.failureCount);
+        this.line = RESULT_PREFIX + this.json;
+        this.frame = this.json.getBytes(Charsets.UTF_8);
+
+        // the lines the old bridge wrote for each file: the failures encoded as a JSON string
+        this.fileLines = Maps.newLinkedHashMap();
+        try {
+            Iterator<Map.Entry<String, JsonNode>> fields = this.mapper.readTree(this.json).fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                String failuresJson = this.mapper.writeValueAsString(field.getValue());
+
+                this.fileLines.put(field.getKey(), FILE_RESULT_PREFIX + this.mapper.writeValueAsString(failuresJson));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<RuleFailure>> framed() throws IOException {
+        // decode straight from the UTF-8 payload of the frame, like the bridge
+        JsonParser jsonParser = this.factory.createParser(this.frame, 0, this.frame.length);
+        try {
+            return this.parser.parse(jsonParser);
+        } finally {
+            jsonParser.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<RuleFailure>> streaming() throws IOException {
+        // the response used to be a line of text which was decoded straight from the reader
+        StringReader reader = new StringReader(this.line);
+        reader.skip(RESULT_PREFIX.length());
+
+        JsonParser jsonParser = this.factory.createParser(reader);
+        try {
+            return this.parser.parse(jsonParser);
+        } finally {
+            jsonParser.close();
+        }
+    }
+
+    @Benchmark
+    public Map<String, List<RuleFailure>> databind() throws IOException {
+        return this.mapper.readValue(this.line.substring(RESULT_PREFIX.length()), RULE_FAILURES_TYPE);
+    }
+
+    @Benchmark
+    public Map<String, List<RuleFailure>> doubleDecode() throws IOException {
+        // each file used to be linted on its own, and its failures came back as a JSON string on a
+        // RESULT line, which was decoded into a string and then by a new mapper into the failures
+        Map<String, List<RuleFailure>> ruleFailures = Maps.newLinkedHashMap();
+        for (Map.Entry<String, String> entry : this.fileLines.entrySet()) {
+            String resultJson = entry.getValue().substring(FILE_RESULT_PREFIX.length());
+            String response = this.mapper.readValue(resultJson, String.class);
+
+            ObjectMapper objectMapper = new ObjectMapper();
+            RuleFailure[] fileRuleFailures = objectMapper.readValue(response, RuleFailure[].class);
+            ruleFailures.put(entry.getKey(), Arrays.asList(fileRuleFailures));
+        }
+
+        return ruleFailures;
+    }
+}
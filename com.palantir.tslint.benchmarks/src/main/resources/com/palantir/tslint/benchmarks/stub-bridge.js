@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Speaks the same protocol as bin/bridge.js, but answers "lintBatch" with canned failures spread
+// over the requested paths instead of running TSLint. The second argument is the failure count.
+
+var readline = require("readline");
+var rl = readline.createInterface(process.stdin);
+
+function failures(paths, failureCount) {
+    var result = {};
+
+    paths.forEach(function (path) {
+        result[path] = [];
+    });
+
+    for (var i = 0; i < failureCount; i++) {
+        var path = paths[i % paths.length];
+        var line = Math.floor(i / paths.length);
+
+        result[path].push({
+            name: path,
+            failure: "Failure number " + i,
+            ruleName: "quotemark",
+            startPosition: { position: line * 80 + 4, line: line, character: 4 },
+            endPosition: { position: line * 80 + 20, line: line, character: 20 }
+        });
+    }
+
+    return result;
+}
+
+// writes a result frame, see main.ts
+function writeResult(id, resultJson) {
+    var payloadLength = Buffer.byteLength(resultJson, "utf8");
+    var frame = Buffer.alloc(5 + 24 + payloadLength);
+
+    frame.writeUInt8("R".charCodeAt(0), 0);
+    frame.writeUInt32BE(24 + payloadLength, 1);
+    frame.writeUInt32BE(id, 9);
+    frame.write(resultJson, 29, payloadLength, "utf8");
+
+    process.stdout.write(frame);
+}
+
+rl.on("line", function (line) {
+    var request = JSON.parse(line);
+    var result = null;
+
+    if (request.method === "lintBatch") {
+        result = failures(request.arguments[0], request.arguments[1]);
+    }
+
+    writeResult(request.id, JSON.stringify(result));
+});
+
+rl.on("close", function () {
+    process.exit(0);
+});
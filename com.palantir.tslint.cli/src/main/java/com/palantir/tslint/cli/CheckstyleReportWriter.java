@@ -0,0 +1,70 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * Writes the rule failures in the Checkstyle XML format, which most CI servers understand.
+ * <p>
+ * Every linted file is listed, including the ones without failures.
+ */
+public final class CheckstyleReportWriter implements ReportWriter {
+
+    @Override
+    public void write(SortedMap<String, List<RuleFailure>> ruleFailuresByPath, Writer writer) throws IOException {
+        try {
+            XMLStreamWriter xmlWriter = XMLOutputFactory.newInstance().createXMLStreamWriter(writer);
+
+            xmlWriter.writeStartDocument("UTF-8", "1.0");
+            xmlWriter.writeStartElement("checkstyle");
+            xmlWriter.writeAttribute("version", "4.3");
+
+            for (Map.Entry<String, List<RuleFailure>> entry : ruleFailuresByPath.entrySet()) {
+                xmlWriter.writeStartElement("file");
+                xmlWriter.writeAttribute("name", entry.getKey());
+
+                for (RuleFailure ruleFailure : entry.getValue()) {
+                    xmlWriter.writeEmptyElement("error");
+                    xmlWriter.writeAttribute("line", String.valueOf(ruleFailure.getStartPosition().getLine() + 1));
+                    xmlWriter.writeAttribute("column", String.valueOf(ruleFailure.getStartPosition().getCharacter() + 1));
+                    xmlWriter.writeAttribute("severity", "warning");
+                    xmlWriter.writeAttribute("message", ruleFailure.getFailure());
+                    xmlWriter.writeAttribute("source", "failure.tslint." + ruleFailure.getRuleName());
+                }
+
+                xmlWriter.writeEndElement();
+            }
+
+            xmlWriter.writeEndElement();
+            xmlWriter.writeEndDocument();
+            xmlWriter.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.cli;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.palantir.tslint.Configuration;
+import com.palantir.tslint.GlobMatcher;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.failure.RuleFailureParser;
+import com.palantir.tslint.profile.ProfiledResult;
+import com.palantir.tslint.profile.ProfiledResultParser;
+import com.palantir.tslint.profile.RuleProfile;
+import com.palantir.tslint.services.BridgePool;
+import com.palantir.tslint.services.Request;
+
+/**
+ * Lints directory trees outside of Eclipse, using the same bridge and configuration handling as
+ * the plugin.
+ * <p>
+ * The files are split into batches which are spread across a pool of node processes, so that
+ * large trees are linted in parallel.
+ */
+public final class HeadlessLinter {
+
+    private static final Set<String> EXCLUDED_DIRECTORY_NAMES = ImmutableSet.of("node_modules", "bower_components");
+    private static final RuleFailureParser RULE_FAILURE_PARSER = new RuleFailureParser();
+    private static final ProfiledResultParser PROFILED_RESULT_PARSER = new ProfiledResultParser();
+
+    private final File bridgeFile;
+    private final int workerCount;
+    private final int batchSize;
+
+    public HeadlessLinter(File bridgeFile, int workerCount, int batchSize) {
+        checkNotNull(bridgeFile);
+        checkArgument(workerCount > 0);
+        checkArgument(batchSize > 0);
+
+        this.bridgeFile = bridgeFile;
+        this.workerCount = workerCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Lints the TypeScript files in the given files and directories.
+     *
+     * @param excludes absolute globs of files and directories to skip, in addition to the
+     *            configuration's own {@code linterOptions.exclude}
+     * @return the rule failures of every linted file, keyed by absolute path
+     */
+    public SortedMap<String, List<RuleFailure>> lint(Collection<File> roots, File configurationFile, Collection<String> excludes)
+            throws IOException {
+        return this.lint(roots, configurationFile, excludes, null);
+    }
+
+    /**
+     * Lints the TypeScript files in the given files and directories, recording the time each rule
+     * takes on each file in the profile.
+     *
+     * @param ruleProfile the profile to record the rule times in, or null to lint without profiling
+     */
+    public SortedMap<String, List<RuleFailure>> lint(Collection<File> roots, File configurationFile, Collection<String> excludes,
+            RuleProfile ruleProfile) throws IOException {
+        checkNotNull(roots);
+        checkNotNull(configurationFile);
+        checkNotNull(excludes);
+
+        Configuration configuration = Configuration.read(configurationFile);
+        List<String> globs = Lists.newArrayList(excludes);
+        globs.addAll(configuration.getExcludes());
+        GlobMatcher globMatcher = new GlobMatcher(globs);
+
+        List<String> paths = Lists.newArrayList();
+        for (File root : roots) {
+            collectFiles(root.getAbsoluteFile(), globMatcher, paths);
+        }
+
+        SortedMap<String, List<RuleFailure>> ruleFailuresByPath = Maps.newTreeMap();
+        if (paths.isEmpty()) {
+            return ruleFailuresByPath;
+        }
+
+        // the pool only starts another node process once the running ones are all busy
+        BridgePool bridgePool = new BridgePool(this.bridgeFile, this.workerCount, new Semaphore(this.workerCount), 0);
+        try {
+            bridgePool.setConfiguration(configuration.getJson());
+
+            List<ListenableFuture<Map<String, List<RuleFailure>>>> batches = Lists.newArrayList();
+            for (List<String> batch : Lists.partition(paths, this.batchSize)) {
+                batches.add(lintBatch(bridgePool, batch, ruleProfile));
+            }
+
+            for (ListenableFuture<Map<String, List<RuleFailure>>> batch : batches) {
+                ruleFailuresByPath.putAll(getResult(batch));
+            }
+        } finally {
+            bridgePool.dispose();
+        }
+
+        return ruleFailuresByPath;
+    }
+
+    private static ListenableFuture<Map<String, List<RuleFailure>>> lintBatch(BridgePool bridgePool, List<String> paths,
+            final RuleProfile ruleProfile) {
+        if (ruleProfile == null) {
+            Request request = new Request("lintBatch", ImmutableList.copyOf(paths));
+
+            return bridgePool.callAsync(request, RULE_FAILURE_PARSER);
+        }
+
+        Request request = new Request("lintBatchProfiled", ImmutableList.copyOf(paths));
+        ListenableFuture<ProfiledResult> response = bridgePool.callAsync(request, PROFILED_RESULT_PARSER);
+
+        return Futures.transform(response, new Function<ProfiledResult, Map<String, List<RuleFailure>>>() {
+            @Override
+            public Map<String, List<RuleFailure>> apply(ProfiledResult result) {
+                ruleProfile.record(result);
+
+                return result.getRuleFailures();
+            }
+        });
+    }
+
+    private static void collectFiles(File file, GlobMatcher globMatcher, List<String> paths) {
+        if (globMatcher.matches(GlobMatcher.toPath(file.getPath()))) {
+            return;
+        }
+
+        if (file.isDirectory()) {
+            if (EXCLUDED_DIRECTORY_NAMES.contains(file.getName())) {
+                return;
+            }
+
+            File[] children = file.listFiles();
+            if (children == null) {
+                return;
+            }
+
+            Arrays.sort(children);
+            for (File child : children) {
+                // skip version control and other hidden directories
+                if (!child.getName().startsWith(".")) {
+                    collectFiles(child, globMatcher, paths);
+                }
+            }
+        } else if (isLintable(file)) {
+            paths.add(file.getPath());
+        }
+    }
+
+    private static boolean isLintable(File file) {
+        String fileName = file.getName();
+
+        return (fileName.endsWith(".ts") || fileName.endsWith(".tsx")) && !fileName.endsWith(".d.ts");
+    }
+
+    private static <T> T getResult(ListenableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.SortedMap;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * Writes the rule failures as a JSON array, in the same shape as TSLint's own json formatter.
+ */
+public final class JsonReportWriter implements ReportWriter {
+
+    private final ObjectMapper mapper;
+
+    public JsonReportWriter() {
+        this.mapper = new ObjectMapper();
+
+        // the caller owns the writer
+        this.mapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    }
+
+    @Override
+    public void write(SortedMap<String, List<RuleFailure>> ruleFailuresByPath, Writer writer) throws IOException {
+        this.mapper.writeValue(writer, ImmutableList.copyOf(Iterables.concat(ruleFailuresByPath.values())));
+    }
+}
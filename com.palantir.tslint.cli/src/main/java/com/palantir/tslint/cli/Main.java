@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.cli;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.SortedMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.palantir.tslint.GlobMatcher;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.profile.RuleProfile;
+import com.palantir.tslint.services.BridgeLog;
+
+/**
+ * Lints a set of files and directories from the command line, for example on a CI server.
+ * <p>
+ * Exits with 0 if there are no rule failures, 1 if there are and 2 if the arguments are invalid.
+ */
+public final class Main {
+
+    private static final String USAGE = "Usage: tslint-headless --bridge <bin/bridge.js> [options] <file or directory>...\n"
+            + "\n"
+            + "Options:\n"
+            + "  --bridge <file>        the bridge script of the plugin, also read from TSLINT_BRIDGE\n"
+            + "  --config <file>        the TSLint configuration (default: tslint.json)\n"
+            + "  --workers <n>          the number of node processes (default: number of processors)\n"
+            + "  --batch-size <n>       the number of files linted per request (default: 50)\n"
+            + "  --exclude <glob>       files and directories to skip, may be repeated\n"
+            + "  --format <format>      json or checkstyle (default: json)\n"
+            + "  --output <file>        where to write the report (default: standard output)\n"
+            + "  --profile <file>       where to write the time each rule took, as CSV or as JSON if the\n"
+            + "                         file name ends with .json\n";
+
+    private Main() {
+        // prevent instantiation
+    }
+
+    public static void main(String[] args) throws IOException {
+        String bridgePath = System.getenv("TSLINT_BRIDGE");
+        String configurationPath = "tslint.json";
+        int workerCount = Runtime.getRuntime().availableProcessors();
+        int batchSize = 50;
+        List<String> excludes = Lists.newArrayList();
+        String format = "json";
+        String outputPath = null;
+        String profilePath = null;
+        List<File> roots = Lists.newArrayList();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+
+                if (arg.equals("--bridge")) {
+                    bridgePath = args[++i];
+                } else if (arg.equals("--config")) {
+                    configurationPath = args[++i];
+                } else if (arg.equals("--workers")) {
+                    workerCount = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--batch-size")) {
+                    batchSize = Integer.parseInt(args[++i]);
+                } else if (arg.equals("--exclude")) {
+                    excludes.add(GlobMatcher.resolve(new File("").getAbsolutePath(), args[++i]));
+                } else if (arg.equals("--format")) {
+                    format = args[++i];
+                } else if (arg.equals("--output")) {
+                    outputPath = args[++i];
+                } else if (arg.equals("--profile")) {
+                    profilePath = args[++i];
+                } else if (arg.startsWith("--")) {
+                    exitWithUsage("Unknown option " + arg);
+                } else {
+                    roots.add(new File(arg));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            exitWithUsage("Missing the value of " + args[args.length - 1]);
+        } catch (NumberFormatException e) {
+            exitWithUsage("Invalid number: " + e.getMessage());
+        }
+
+        if (bridgePath == null) {
+            exitWithUsage("The bridge script is required");
+        }
+        if (roots.isEmpty()) {
+            exitWithUsage("Nothing to lint");
+        }
+        if (workerCount < 1 || batchSize < 1) {
+            exitWithUsage("The number of workers and the batch size must be positive");
+        }
+
+        ReportWriter reportWriter = null;
+        if (format.equals("json")) {
+            reportWriter = new JsonReportWriter();
+        } else if (format.equals("checkstyle")) {
+            reportWriter = new CheckstyleReportWriter();
+        } else {
+            exitWithUsage("Unknown format " + format);
+        }
+
+        // whatever the rules log goes to stderr, so that it doesn't end up in the report
+        BridgeLog.getDefault().addListener(new BridgeLog.Listener() {
+            @Override
+            public void entryAdded(BridgeLog.Entry entry) {
+                System.err.println(entry.getMessage());
+            }
+        });
+
+        HeadlessLinter linter = new HeadlessLinter(new File(bridgePath), workerCount, batchSize);
+        RuleProfile ruleProfile = profilePath != null ? new RuleProfile() : null;
+        SortedMap<String, List<RuleFailure>> ruleFailuresByPath = linter.lint(roots, new File(configurationPath), excludes, ruleProfile);
+
+        if (ruleProfile != null) {
+            writeProfile(ruleProfile, profilePath);
+        }
+
+        Writer writer = outputPath == null
+                ? new OutputStreamWriter(System.out, Charsets.UTF_8)
+                : new OutputStreamWriter(new FileOutputStream(outputPath), Charsets.UTF_8);
+        try {
+            reportWriter.write(ruleFailuresByPath, writer);
+        } finally {
+            if (outputPath == null) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        }
+
+        for (List<RuleFailure> ruleFailures : ruleFailuresByPath.values()) {
+            if (!ruleFailures.isEmpty()) {
+                System.exit(1);
+            }
+        }
+
+        System.exit(0);
+    }
+
+    private static void writeProfile(RuleProfile ruleProfile, String profilePath) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(profilePath), Charsets.UTF_8);
+        try {
+            if (profilePath.endsWith(".json")) {
+                ruleProfile.writeJson(writer);
+            } else {
+                ruleProfile.writeCsv(writer);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void exitWithUsage(String message) {
+        PrintStream err = System.err;
+
+        err.println(message);
+        err.println();
+        err.print(USAGE);
+        System.exit(2);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/**
+  * Writes the frames the Java side reads from stdout, see main.ts for their layout.
+  *
+  * This file comes first in bin/bridge.js, so stdout is wrapped before TSLint, TypeScript or any
+  * custom rule is loaded. Anything they write to stdout, even while loading, is wrapped in log
+  * frames so that it can't corrupt the responses.
+  */
+module Bridge {
+
+    export var RESULT_FRAME = "R";
+    export var ERROR_FRAME = "E";
+    export var LOG_FRAME = "L";
+
+    // only frames may reach the real stdout
+    var stdout: any = process.stdout;
+    var writeStdout = stdout.write.bind(stdout);
+
+    stdout.write = (chunk: any, encoding?: any, callback?: any) => {
+        writeFrame(LOG_FRAME, [], String(chunk));
+
+        if (typeof encoding === "function") {
+            encoding();
+        } else if (typeof callback === "function") {
+            callback();
+        }
+
+        return true;
+    };
+
+    export function writeFrame(type: string, header: number[], payload: string) {
+        writeStdout(createFrame(type, header, payload));
+    }
+
+    function createFrame(type: string, header: number[], payload: string) {
+        var headerLength = header.length * 8;
+        var payloadLength = Buffer.byteLength(payload, "utf8");
+        var frame = allocateBuffer(5 + headerLength + payloadLength);
+
+        frame.writeUInt8(type.charCodeAt(0), 0);
+        frame.writeUInt32BE(headerLength + payloadLength, 1);
+        header.forEach((value: number, i: number) => {
+            // split into two 32-bit halves, which also works for negative values
+            var high = Math.floor(value / 4294967296);
+
+            frame.writeInt32BE(high, 5 + i * 8);
+            frame.writeUInt32BE(value - high * 4294967296, 5 + i * 8 + 4);
+        });
+        frame.write(payload, 5 + headerLength, payloadLength, "utf8");
+
+        return frame;
+    }
+
+    function allocateBuffer(size: number): Buffer {
+        var bufferClass: any = Buffer;
+
+        // the constructor is deprecated in newer versions of node
+        return bufferClass.alloc != null ? bufferClass.alloc(size) : new Buffer(size);
+    }
+}
@@ -14,25 +14,212 @@
  * limitations under the License.
  */
 
+/// <reference path="frames.ts" />
+/// <reference path="projectService.ts" />
+/// <reference path="ruleProfiler.ts" />
+
 var fs = require("fs");
+var path = require("path");
 var Linter = require("tslint");
 
 module Bridge {
+
+    // touches the most common syntax, so that rules which only look at certain nodes get to run
+    var WARM_UP_SOURCE = [
+        "import * as path from \"path\";",
+        "",
+        "export interface Point { x: number; y?: number; }",
+        "",
+        "export class Shape<T> implements Point {",
+        "    public x = 0;",
+        "    private name: string = 'shape';",
+        "",
+        "    constructor(private items: T[]) {",
+        "    }",
+        "",
+        "    public area(scale: number): number {",
+        "        var total = 0;",
+        "        for (let i = 0; i < this.items.length; i++) {",
+        "            if (i % 2 === 0) { total += i * scale; } else { total -= 1; }",
+        "        }",
+        "        const names = this.items.map((item: T) => `${item}`);",
+        "        return names.length > 0 ? total : path.sep.length;",
+        "    }",
+        "}",
+        ""
+    ].join("\n");
+
     export class LinterEndpoint {
         private options: any;
+        private configurationVersion: number;
+        private projectService: ProjectService;
+        private ruleProfiler: RuleProfiler;
+
+        constructor() {
+            this.projectService = new ProjectService();
+            this.ruleProfiler = new RuleProfiler();
+        }
+
+        public setConfiguration(configuration: any, configurationVersion: number) {
+            var parsedConfiguration = JSON.parse(configuration);
+
+            // the rules directories have already been resolved against the configuration file
+            var rulesDirectories: string[] = parsedConfiguration.rulesDirectory || [];
+            this.unloadRules(rulesDirectories);
 
-        public setConfiguration(configuration: any) {
             this.options = {
-                "configuration": JSON.parse(configuration),
-                "formatter": "json"
+                "configuration": parsedConfiguration,
+                "formatter": "json",
+                "rulesDirectory": rulesDirectories
             };
+            this.configurationVersion = configurationVersion;
+        }
+
+        public getConfigurationVersion() {
+            return this.configurationVersion;
         }
 
         public lint(path: string) {
             var contents = fs.readFileSync(path, "utf8");
-            var linter = new Linter(path, contents, this.options);
+
+            return this.lintSource(path, contents, null);
+        }
+
+        /**
+         * Lints the files on disk. With type checking, the files are linted against the program of
+         * their tsconfig.json, which is only updated for the files whose modification stamps
+         * changed.
+         */
+        public lintBatch(paths: string[], typeCheck?: boolean, versions?: { [path: string]: number }) {
+            var failures: { [path: string]: any[] } = {};
+
+            if (typeCheck) {
+                this.projectService.beginRequest();
+            }
+
+            paths.forEach((path: string) => {
+                failures[path] = this.lintFile(path, typeCheck, versions);
+            });
+
+            return failures;
+        }
+
+        /**
+         * Lints the files on disk like {@link #lintBatch}, and also returns how long each rule
+         * took on each file in microseconds.
+         */
+        public lintBatchProfiled(paths: string[], typeCheck?: boolean, versions?: { [path: string]: number }) {
+            var failures: { [path: string]: any[] } = {};
+            var ruleTimes: { [path: string]: { [ruleName: string]: number } } = {};
+
+            if (typeCheck) {
+                this.projectService.beginRequest();
+            }
+            this.ruleProfiler.instrument(this.options, this.configurationVersion);
+
+            paths.forEach((path: string) => {
+                this.ruleProfiler.begin();
+                try {
+                    failures[path] = this.lintFile(path, typeCheck, versions);
+                } finally {
+                    ruleTimes[path] = this.ruleProfiler.end();
+                }
+            });
+
+            return {
+                "failures": failures,
+                "ruleTimes": ruleTimes
+            };
+        }
+
+        /**
+         * Lints the unsaved contents of an editor. The bridge keeps the contents under the given
+         * version, so that later requests only need to send the edits made since.
+         */
+        public lintContents(path: string, contents: string, typeCheck?: boolean, version?: number) {
+            var failures: { [path: string]: any[] } = {};
+            var fileName = ts.normalizePath(path);
+
+            this.projectService.beginRequest();
+            var project = this.projectService.getEditorProject(fileName, typeCheck);
+            project.setContents(fileName, contents, version);
+
+            failures[path] = this.lintProjectSource(project, fileName);
+
+            return failures;
+        }
+
+        /**
+         * Applies the edits made in an editor since the base version to the contents the bridge
+         * has and lints the result. The program updates the previous source file with the edited
+         * ranges rather than parsing the whole file again.
+         *
+         * The path is left out of the result if the bridge doesn't have the base version, for
+         * example because it was restarted, in which case the full contents have to be sent.
+         */
+        public lintEdits(path: string, baseVersion: number, version: number, edits: TextEdit[], typeCheck?: boolean) {
+            var failures: { [path: string]: any[] } = {};
+            var fileName = ts.normalizePath(path);
+
+            this.projectService.beginRequest();
+            var project = this.projectService.getEditorProject(fileName, typeCheck);
+            if (project.applyEdits(fileName, baseVersion, version, edits)) {
+                failures[path] = this.lintProjectSource(project, fileName);
+            }
+
+            return failures;
+        }
+
+        /**
+         * Lints a small snippet with the current configuration and throws the failures away, so
+         * that the rules are loaded and the code paths of the linter are compiled before the first
+         * file is linted.
+         */
+        public warmUp() {
+            this.lintSource("warmUp.ts", WARM_UP_SOURCE, null);
+        }
+
+        private unloadRules(rulesDirectories: string[]) {
+            // custom rules are loaded with require, so changes to them only take effect once they're evicted
+            var requireCache = require.cache;
+            var directories = rulesDirectories.map((directory: string) => path.resolve(directory) + path.sep);
+
+            Object.keys(requireCache).forEach((modulePath: string) => {
+                if (directories.some((directory: string) => modulePath.indexOf(directory) === 0)) {
+                    delete requireCache[modulePath];
+                }
+            });
+        }
+
+        private lintFile(path: string, typeCheck: boolean, versions: { [path: string]: number }) {
+            var fileName = ts.normalizePath(path);
+            var project = typeCheck ? this.projectService.getConfiguredProject(fileName) : null;
+
+            // files outside of any project are linted on their own
+            if (project == null) {
+                return this.lint(path);
+            }
+
+            if (versions != null && path in versions) {
+                project.setDiskVersion(fileName, String(versions[path]));
+            }
+
+            return this.lintProjectSource(project, fileName);
+        }
+
+        private lintProjectSource(project: Project, fileName: string) {
+            var program = project.getProgram();
+            var sourceFile = program.getSourceFile(fileName);
+
+            return this.lintSource(sourceFile.fileName, sourceFile.text, program);
+        }
+
+        private lintSource(path: string, contents: string, program: any) {
+            var linter = new Linter(path, contents, this.options, program);
             var result = linter.lint();
-            return result.output;
+
+            // return the failures themselves rather than the formatted output so they're only encoded once
+            return result.failures.map((failure: any) => failure.toJson());
         }
     }
 }
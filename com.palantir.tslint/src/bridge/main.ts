@@ -14,30 +14,50 @@
  * limitations under the License.
  */
 
+/// <reference path="frames.ts" />
 /// <reference path="linterEndpoint.ts" />
 
 /**
   * This module provides an interface between stdin, stdout and TSLint.
   *
+  * Each response is tagged with the id of the request it answers so that the Java side can have
+  * several requests in flight at once.
+  *
+  * Requests are queued and handled one per turn of the event loop, so that a "cancel" message can
+  * remove requests from the queue before they are handled. Cancelled requests get no response.
+  *
+  * Requests arrive as lines of JSON, while responses are written as frames: a type byte, the length
+  * of the payload as a 32-bit big-endian integer and the payload itself. A result starts with the
+  * request id, the time spent on the request in microseconds and the resident set size of the
+  * process in bytes, which the Java side keeps as metrics, each as a 64-bit big-endian integer,
+  * followed by the JSON of the result. An error starts with the request id, followed by the error.
+  *
+  * Anything else written to stdout, for example by a rule calling console.log, is wrapped in log
+  * frames so that it can't corrupt the responses, see frames.ts.
+  *
   * @author aramaswamy
   */
 module Bridge {
 
     export class Main {
         private endpoint: any;
+        private queue: Request[];
+        private scheduled: boolean;
 
         constructor() {
             this.endpoint = new LinterEndpoint();
+            this.queue = [];
+            this.scheduled = false;
         }
 
         public run() {
             var myProcess: any = process;
             var readline = require("readline");
-            var rl = readline.createInterface(myProcess.stdin, myProcess.stdout);
+            var rl = readline.createInterface(myProcess.stdin);
 
             // process incoming requests from stdin
             rl.on("line", (line: string) => {
-                this.processRequest(line);
+                this.enqueueRequest(line);
             });
 
             // exit when stdin is closed
@@ -46,10 +66,48 @@ module Bridge {
             });
         }
 
-        private processRequest(requestJson: string) {
+        private enqueueRequest(requestJson: string) {
+            var request: Request;
+
             try {
-                var request: Request = JSON.parse(requestJson);
+                request = JSON.parse(requestJson);
+            } catch (e) {
+                this.writeError(null, e);
+                return;
+            }
 
+            // cancellation skips the queue, otherwise it would only be seen once it's too late
+            if (request.method === "cancel") {
+                var ids: number[] = request.arguments[0];
+
+                this.queue = this.queue.filter((queuedRequest: Request) => ids.indexOf(queuedRequest.id) < 0);
+                return;
+            }
+
+            this.queue.push(request);
+            this.scheduleNextRequest();
+        }
+
+        private scheduleNextRequest() {
+            if (this.scheduled || this.queue.length === 0) {
+                return;
+            }
+
+            // yield to the event loop between requests so that new messages are read in the meantime
+            this.scheduled = true;
+            setImmediate(() => {
+                this.scheduled = false;
+                this.processRequest(this.queue.shift());
+                this.scheduleNextRequest();
+            });
+        }
+
+        private processRequest(request: Request) {
+            var myProcess: any = process;
+            var id = request.id;
+            var startTime = myProcess.hrtime();
+
+            try {
                 // invoke the endpoint method with the supplied arguments
                 var method = this.endpoint[request.method];
                 var result = method.apply(this.endpoint, request.arguments);
@@ -61,24 +119,33 @@ module Bridge {
 
                 // convert the result to JSON and write it to stdout
                 var resultJson = JSON.stringify(result);
-                console.log("RESULT: " + resultJson);
+                var elapsedTime = myProcess.hrtime(startTime);
+                var elapsedMicros = Math.round(elapsedTime[0] * 1e6 + elapsedTime[1] / 1e3);
+                var residentBytes = myProcess.memoryUsage().rss;
+                writeFrame(RESULT_FRAME, [id, elapsedMicros, residentBytes], resultJson);
             } catch (e) {
-                var error: string;
-
-                if (e.stack != null) {
-                    error = e.stack;
-                } else if (e.message != null) {
-                    error = e.message;
-                } else {
-                    error = "Error: No stack trace or error message was provided.";
-                }
+                this.writeError(id, e);
+            }
+        }
+
+        private writeError(id: number, e: any) {
+            var error: string;
 
-                console.log("ERROR: " + error.replace(/\n/g, "\\n"));
+            if (e.stack != null) {
+                error = e.stack;
+            } else if (e.message != null) {
+                error = e.message;
+            } else {
+                error = "Error: No stack trace or error message was provided.";
             }
+
+            // requests which couldn't be parsed have no id
+            writeFrame(ERROR_FRAME, [id != null ? id : -1], error);
         }
     }
 
     interface Request {
+        id: number;
         endpoint: string;
         method: string;
         arguments: any[];
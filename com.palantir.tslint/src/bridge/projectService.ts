@@ -0,0 +1,358 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/// <reference path="frames.ts" />
+
+var fs = require("fs");
+var ts = require("typescript");
+
+module Bridge {
+
+    /**
+     * Keeps a TypeScript language service for each tsconfig.json, so that type-checked rules can
+     * share a program which is only rebuilt for the files which changed.
+     *
+     * The Java side passes the modification stamps of the files it lints. Any other file of a
+     * project, such as a declaration file, is checked against its modification time on disk once
+     * per request.
+     *
+     * The files open in editors get a project of their own unless they're type checked, so that
+     * their edits can be applied incrementally too.
+     */
+    export class ProjectService {
+        private static MAXIMUM_INFERRED_PROJECTS = 16;
+
+        private documentRegistry: any;
+        private projects: { [configFile: string]: Project };
+        private inferredProjects: { [fileName: string]: Project };
+        private configFiles: { [directory: string]: string };
+        private generation: number;
+
+        constructor() {
+            this.documentRegistry = ts.createDocumentRegistry();
+            this.projects = {};
+            this.inferredProjects = {};
+            this.configFiles = {};
+            this.generation = 0;
+        }
+
+        /**
+         * Starts a new request, after which the files on disk are checked for changes again.
+         */
+        public beginRequest() {
+            this.generation++;
+
+            // tsconfig.json files may have been added or removed in the meantime
+            this.configFiles = {};
+        }
+
+        /**
+         * Returns the project of the tsconfig.json which contains the file, or null if the file
+         * isn't part of one.
+         */
+        public getConfiguredProject(fileName: string) {
+            var configFile = this.findConfigFile(ts.getDirectoryPath(fileName));
+            if (configFile == null) {
+                return null;
+            }
+
+            var project = this.projects[configFile];
+            if (project == null || project.isStale()) {
+                project = Project.load(configFile, this.documentRegistry, () => this.generation);
+                this.projects[configFile] = project;
+            }
+
+            project.addFile(fileName);
+
+            return project;
+        }
+
+        /**
+         * Returns the project for the contents of an editor: the file's configured project when
+         * it's type checked, or else a project holding just the file.
+         */
+        public getEditorProject(fileName: string, typeCheck: boolean) {
+            var project = typeCheck ? this.getConfiguredProject(fileName) : null;
+            if (project != null) {
+                return project;
+            }
+
+            project = this.inferredProjects[fileName];
+            if (project != null) {
+                // move the project to the end of the insertion order, which is the eviction order
+                delete this.inferredProjects[fileName];
+            } else {
+                // other files aren't needed to parse the file, nor is the default library
+                var compilerOptions = { noLib: true, noResolve: true };
+
+                project = new Project(null, compilerOptions, [fileName], this.documentRegistry, () => this.generation);
+            }
+            this.inferredProjects[fileName] = project;
+
+            var fileNames = Object.keys(this.inferredProjects);
+            if (fileNames.length > ProjectService.MAXIMUM_INFERRED_PROJECTS) {
+                delete this.inferredProjects[fileNames[0]];
+            }
+
+            return project;
+        }
+
+        private findConfigFile(directory: string): string {
+            if (directory in this.configFiles) {
+                return this.configFiles[directory];
+            }
+
+            var configFile = ts.combinePaths(directory, "tsconfig.json");
+            if (!ts.sys.fileExists(configFile)) {
+                var parentDirectory = ts.getDirectoryPath(directory);
+
+                configFile = parentDirectory !== directory ? this.findConfigFile(parentDirectory) : null;
+            }
+
+            this.configFiles[directory] = configFile;
+
+            return configFile;
+        }
+    }
+
+    export interface TextEdit {
+        start: number;
+        length: number;
+        text: string;
+    }
+
+    export class Project {
+        private configFile: string;
+        private configVersion: number;
+        private compilerOptions: any;
+        private fileNames: string[];
+        private scriptInfos: { [fileName: string]: ScriptInfo };
+        private getGeneration: () => number;
+        private service: any;
+
+        constructor(configFile: string, compilerOptions: any, fileNames: string[], documentRegistry: any,
+                getGeneration: () => number) {
+            this.configFile = configFile;
+            this.configVersion = configFile != null ? getModificationTime(configFile) : -1;
+            this.compilerOptions = compilerOptions;
+            this.fileNames = fileNames;
+            this.scriptInfos = {};
+            this.getGeneration = getGeneration;
+            this.service = ts.createLanguageService(this.createHost(), documentRegistry);
+        }
+
+        public static load(configFile: string, documentRegistry: any, getGeneration: () => number) {
+            var readResult = ts.readConfigFile(configFile, ts.sys.readFile);
+            var parsedConfig = ts.parseJsonConfigFileContent(readResult.config || {}, ts.sys, ts.getDirectoryPath(configFile));
+            var fileNames = parsedConfig.fileNames.map((fileName: string) => ts.normalizePath(fileName));
+
+            return new Project(configFile, parsedConfig.options, fileNames, documentRegistry, getGeneration);
+        }
+
+        public isStale() {
+            return this.configFile != null && getModificationTime(this.configFile) !== this.configVersion;
+        }
+
+        public addFile(fileName: string) {
+            // files created since the project was loaded aren't in its list yet
+            if (this.fileNames.indexOf(fileName) < 0) {
+                this.fileNames.push(fileName);
+            }
+        }
+
+        public setDiskVersion(fileName: string, diskVersion: string) {
+            this.getScriptInfo(fileName).setDiskVersion(diskVersion);
+        }
+
+        public setContents(fileName: string, contents: string, editVersion: number) {
+            this.getScriptInfo(fileName).setContents(contents, editVersion);
+        }
+
+        /**
+         * Applies the edits to the contents of the file, if the contents are at the base version.
+         *
+         * @return false if the project doesn't have the base version, in which case the caller has
+         *         to send the full contents instead
+         */
+        public applyEdits(fileName: string, baseVersion: number, editVersion: number, edits: TextEdit[]) {
+            return this.getScriptInfo(fileName).applyEdits(baseVersion, editVersion, edits);
+        }
+
+        public getProgram() {
+            return this.service.getProgram();
+        }
+
+        private getScriptInfo(fileName: string) {
+            var scriptInfo = this.scriptInfos[fileName];
+
+            if (scriptInfo == null) {
+                scriptInfo = new ScriptInfo(fileName);
+                this.scriptInfos[fileName] = scriptInfo;
+            }
+
+            return scriptInfo;
+        }
+
+        private createHost() {
+            return {
+                getCompilationSettings: () => this.compilerOptions,
+                getScriptFileNames: () => this.fileNames,
+                getScriptVersion: (fileName: string) => {
+                    return this.getScriptInfo(fileName).getVersion(this.getGeneration());
+                },
+                getScriptSnapshot: (fileName: string) => this.getScriptInfo(fileName).getSnapshot(),
+                getCurrentDirectory: () => this.configFile != null ? ts.getDirectoryPath(this.configFile) : "",
+                getDefaultLibFileName: (options: any) => ts.getDefaultLibFilePath(options)
+            };
+        }
+    }
+
+    /**
+     * The contents of a file as the program sees them, which are either the contents on disk or
+     * the unsaved contents of an editor.
+     */
+    class ScriptInfo {
+        private fileName: string;
+        private version: number;
+        private snapshot: ScriptSnapshot;
+        private diskVersion: string;
+        private editVersion: number;
+        private versionedByCaller: boolean;
+        private checkedGeneration: number;
+
+        constructor(fileName: string) {
+            this.fileName = fileName;
+            this.version = 0;
+            this.snapshot = null;
+            this.diskVersion = null;
+            this.editVersion = null;
+            this.versionedByCaller = false;
+            this.checkedGeneration = -1;
+        }
+
+        public setContents(contents: string, editVersion: number) {
+            if (this.snapshot == null || contents !== this.snapshot.text) {
+                this.snapshot = new ScriptSnapshot(contents, null, null);
+                this.version++;
+            }
+
+            // the file has to be read again once it's linted from disk
+            this.diskVersion = null;
+            this.editVersion = editVersion != null ? editVersion : null;
+            this.versionedByCaller = true;
+        }
+
+        public applyEdits(baseVersion: number, editVersion: number, edits: TextEdit[]) {
+            if (this.editVersion == null || this.editVersion !== baseVersion || this.snapshot == null) {
+                return false;
+            }
+
+            // each edit is relative to the contents left by the ones before it
+            var contents = this.snapshot.text;
+            var changeRanges: any[] = [];
+            edits.forEach((edit: TextEdit) => {
+                contents = contents.substring(0, edit.start) + edit.text + contents.substring(edit.start + edit.length);
+                changeRanges.push(ts.createTextChangeRange(ts.createTextSpan(edit.start, edit.length), edit.text.length));
+            });
+
+            if (changeRanges.length > 0) {
+                var changeRange = ts.collapseTextChangeRangesAcrossMultipleVersions(changeRanges);
+
+                this.snapshot = new ScriptSnapshot(contents, this.snapshot, changeRange);
+                this.version++;
+            }
+            this.editVersion = editVersion;
+
+            return true;
+        }
+
+        public setDiskVersion(diskVersion: string) {
+            this.setDiskVersionIfChanged(diskVersion);
+            this.versionedByCaller = true;
+        }
+
+        public getVersion(generation: number) {
+            // files the caller doesn't keep track of are checked for changes once per request
+            if (!this.versionedByCaller && this.checkedGeneration !== generation) {
+                this.checkedGeneration = generation;
+                this.setDiskVersionIfChanged(String(getModificationTime(this.fileName)));
+            }
+
+            return String(this.version);
+        }
+
+        public getSnapshot() {
+            if (this.snapshot == null && ts.sys.fileExists(this.fileName)) {
+                this.snapshot = new ScriptSnapshot(ts.sys.readFile(this.fileName), null, null);
+            }
+
+            return this.snapshot != null ? this.snapshot : undefined;
+        }
+
+        private setDiskVersionIfChanged(diskVersion: string) {
+            if (diskVersion !== this.diskVersion) {
+                this.diskVersion = diskVersion;
+                this.snapshot = null;
+                this.editVersion = null;
+                this.version++;
+            }
+        }
+    }
+
+    /**
+     * A snapshot which knows how it differs from the one before it, which lets the language
+     * service update the previous source file incrementally rather than parsing the whole file.
+     */
+    class ScriptSnapshot {
+        public text: string;
+        private previous: ScriptSnapshot;
+        private changeRange: any;
+
+        constructor(text: string, previous: ScriptSnapshot, changeRange: any) {
+            this.text = text;
+            this.previous = previous;
+            this.changeRange = changeRange;
+        }
+
+        public getText(start: number, end: number) {
+            return this.text.substring(start, end);
+        }
+
+        public getLength() {
+            return this.text.length;
+        }
+
+        public getChangeRange(oldSnapshot: ScriptSnapshot) {
+            // only the snapshot right before this one is kept, anything older is parsed from scratch
+            if (oldSnapshot === this.previous && this.previous != null) {
+                // the chain ends here, so the previous contents can be garbage collected
+                this.previous = null;
+
+                return this.changeRange;
+            }
+
+            return undefined;
+        }
+    }
+
+    function getModificationTime(fileName: string) {
+        try {
+            return fs.statSync(fileName).mtime.getTime();
+        } catch (e) {
+            return -1;
+        }
+    }
+}
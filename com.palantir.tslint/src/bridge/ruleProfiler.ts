@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/// <reference path="frames.ts" />
+
+var ruleLoader = require("tslint/lib/ruleLoader");
+
+module Bridge {
+
+    /**
+     * Measures the time each rule spends on each file.
+     *
+     * TSLint doesn't time its rules, so the apply methods of the configured rules are wrapped
+     * instead. The rule classes are cached by require, so they only have to be wrapped once per
+     * configuration; the wrappers only measure anything while a file is being profiled.
+     */
+    export class RuleProfiler {
+        private static PROFILED_PROPERTY = "__tslintProfiled";
+        private static APPLY_METHODS = ["apply", "applyWithProgram"];
+
+        private instrumentedVersion: number;
+        private ruleMicros: { [ruleName: string]: number };
+
+        constructor() {
+            this.instrumentedVersion = null;
+            this.ruleMicros = null;
+        }
+
+        /**
+         * Wraps the rules of the configuration, unless that was already done for this version of
+         * it. Custom rules are loaded again for each new configuration, so they have to be wrapped
+         * again too.
+         */
+        public instrument(options: any, configurationVersion: number) {
+            if (this.instrumentedVersion === configurationVersion) {
+                return;
+            }
+
+            var ruleNames = Object.keys(options.configuration.rules || {});
+            ruleNames.forEach((ruleName: string) => {
+                var Rule = ruleLoader.findRule != null ? ruleLoader.findRule(ruleName, options.rulesDirectory) : null;
+
+                if (Rule != null && Rule.prototype != null && !Rule.prototype.hasOwnProperty(RuleProfiler.PROFILED_PROPERTY)) {
+                    this.wrap(Rule.prototype, ruleName);
+                }
+            });
+
+            this.instrumentedVersion = configurationVersion;
+        }
+
+        /**
+         * Starts timing the rules, which are applied to a single file until {@link #end} is called.
+         */
+        public begin() {
+            this.ruleMicros = {};
+        }
+
+        /**
+         * Stops timing the rules and returns the time each of them took in microseconds.
+         */
+        public end() {
+            var ruleMicros = this.ruleMicros;
+            this.ruleMicros = null;
+
+            return ruleMicros;
+        }
+
+        private wrap(prototype: any, ruleName: string) {
+            var profiler = this;
+
+            RuleProfiler.APPLY_METHODS.forEach((methodName: string) => {
+                var method = prototype[methodName];
+                if (typeof method !== "function") {
+                    return;
+                }
+
+                prototype[methodName] = function () {
+                    if (profiler.ruleMicros == null) {
+                        return method.apply(this, arguments);
+                    }
+
+                    var myProcess: any = process;
+                    var startTime = myProcess.hrtime();
+                    try {
+                        return method.apply(this, arguments);
+                    } finally {
+                        // typed rules may call apply from applyWithProgram, so only count the outermost call
+                        var elapsedTime = myProcess.hrtime(startTime);
+                        var elapsedMicros = Math.round(elapsedTime[0] * 1e6 + elapsedTime[1] / 1e3);
+
+                        profiler.ruleMicros[ruleName] = Math.max(profiler.ruleMicros[ruleName] || 0, elapsedMicros);
+                    }
+                };
+            });
+
+            prototype[RuleProfiler.PROFILED_PROPERTY] = true;
+        }
+    }
+}
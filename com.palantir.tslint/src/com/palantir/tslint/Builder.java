@@ -18,65 +18,161 @@ package com.palantir.tslint;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.IScopeContext;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 public final class Builder extends IncrementalProjectBuilder {
 
     public static final String BUILDER_ID = "com.palantir.tslint.tslintBuilder";
 
-    private Linter linter;
+    private static final int CONTENT_FLAGS = IResourceDelta.CONTENT | IResourceDelta.REPLACED;
 
     public Builder() {
         super();
-        this.linter = new Linter();
     }
 
     @Override
     protected IProject[] build(int kind, Map<String, String> args, IProgressMonitor monitor) throws CoreException {
-        if (kind == FULL_BUILD) {
-            fullBuild();
-        } else {
-            IResourceDelta delta = getDelta(getProject());
-            if (delta == null) {
-                fullBuild();
+        try {
+            if (kind == FULL_BUILD) {
+                fullBuild(monitor);
             } else {
-                incrementalBuild(delta);
+                IResourceDelta delta = getDelta(getProject());
+                if (delta == null) {
+                    fullBuild(monitor);
+                } else {
+                    incrementalBuild(delta, monitor);
+                }
             }
+        } catch (OperationCanceledException e) {
+            // the files which weren't scheduled yet have to be picked up by the next build
+            forgetLastBuiltState();
+            throw e;
         }
 
-        return null;
+        // build again when a configuration which lives in another project changes
+        return this.getConfigurationProjects();
     }
 
     @Override
     protected void clean(IProgressMonitor monitor) throws CoreException {
+        TSLintPlugin.getDefault().getLintScheduler().unschedule(getProject());
         getProject().deleteMarkers(Linter.MARKER_TYPE, true, IResource.DEPTH_INFINITE);
+        TSLintPlugin.getDefault().getMarkerBudget().remove(getProject());
+    }
+
+    protected void fullBuild(IProgressMonitor monitor) throws CoreException {
+        ResourceVisitor visitor = new ResourceVisitor(this.createResourceFilter(), monitor);
+        getProject().accept(visitor);
+
+        this.schedule(visitor.files, LintScheduler.Priority.BACKGROUND);
+    }
+
+    protected void incrementalBuild(IResourceDelta delta, IProgressMonitor monitor) throws CoreException {
+        ResourceFilter resourceFilter = this.createResourceFilter();
+        DeltaVisitor visitor = new DeltaVisitor(resourceFilter, monitor);
+        delta.accept(visitor);
+
+        // a new configuration affects every file which was linted with the old one, which has to be
+        // checked before any of the files are linted with the new one
+        Set<IFile> files = Sets.newLinkedHashSet();
+        if (this.updateConfiguration()) {
+            for (IFile file : this.getLinter().getLintedFiles()) {
+                if (!resourceFilter.isExcluded(file)) {
+                    files.add(file);
+                }
+            }
+        }
+
+        this.schedule(visitor.files, LintScheduler.Priority.RECENTLY_EDITED);
+        this.schedule(files, LintScheduler.Priority.BACKGROUND);
+
+        // removed files may have freed up markers for the files cut short by the project cap
+        MarkerWriter.scheduleReleasedFiles();
+    }
+
+    private boolean updateConfiguration() {
+        String configurationPath = getConfigurationPath(this.getProject());
+
+        // there's nothing to reload until the project actually has a configuration
+        if (!new File(configurationPath).exists()) {
+            return false;
+        }
+
+        // the editors and the background jobs may have loaded the new configuration already
+        Linter linter = this.getLinter();
+        try {
+            linter.updateConfiguration(configurationPath);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        return linter.clearConfigurationChanged();
+    }
+
+    /**
+     * Hands the files over to the background scheduler, so that the build doesn't wait for them to
+     * be linted.
+     */
+    private void schedule(Collection<IFile> files, LintScheduler.Priority priority) {
+        TSLintPlugin.getDefault().getLintScheduler().schedule(this.getProject(), files, priority);
+    }
+
+    private IProject[] getConfigurationProjects() {
+        IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
+        Set<IProject> projects = Sets.newLinkedHashSet();
+
+        for (File file : this.getLinter().getConfigurationDependencies()) {
+            IPath location = Path.fromOSString(file.getAbsolutePath());
+            IResource resource = file.isDirectory() ? root.getContainerForLocation(location) : root.getFileForLocation(location);
+
+            if (resource != null && resource.getProject() != null && !resource.getProject().equals(this.getProject())) {
+                projects.add(resource.getProject());
+            }
+        }
+
+        return projects.toArray(new IProject[projects.size()]);
     }
 
-    protected void fullBuild() throws CoreException {
-        getProject().accept(new ResourceVisitor());
+    private ResourceFilter createResourceFilter() {
+        return new ResourceFilter(this.getProject(), getConfigurationPath(this.getProject()));
     }
 
-    protected void incrementalBuild(IResourceDelta delta) throws CoreException {
-        delta.accept(new DeltaVisitor());
+    private Linter getLinter() {
+        return TSLintPlugin.getDefault().getLinter(this.getProject());
     }
 
-    private void lint(IResource resource) throws IOException {
-        IProject project = this.getProject();
+    static IEclipsePreferences getPreferences(IProject project) {
         IScopeContext projectScope = new ProjectScope(project);
-        IEclipsePreferences prefs = projectScope.getNode(TSLintPlugin.ID);
+
+        return projectScope.getNode(TSLintPlugin.ID);
+    }
+
+    static String getConfigurationPath(IProject project) {
+        IEclipsePreferences prefs = getPreferences(project);
         String configurationPath = prefs.get("configPath", null);
         if (configurationPath != null && !configurationPath.equals("")) {
             File configFile = new File(configurationPath);
@@ -90,34 +186,78 @@ public final class Builder extends IncrementalProjectBuilder {
         } else {
             configurationPath = project.getFile("tslint.json").getRawLocation().toOSString();
         }
-        this.linter.lint(resource, configurationPath);
+
+        return configurationPath;
     }
 
-    private class ResourceVisitor implements IResourceVisitor {
+    private static void checkCanceled(IProgressMonitor monitor) {
+        if (monitor != null && monitor.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+    }
+
+    private static class ResourceVisitor implements IResourceVisitor {
+        private final List<IFile> files = Lists.newArrayList();
+        private final ResourceFilter resourceFilter;
+        private final IProgressMonitor monitor;
+
+        public ResourceVisitor(ResourceFilter resourceFilter, IProgressMonitor monitor) {
+            this.resourceFilter = resourceFilter;
+            this.monitor = monitor;
+        }
+
         @Override
         public boolean visit(IResource resource) {
-            try {
-                lint(resource);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+            checkCanceled(this.monitor);
+
+            // prune excluded folders rather than visiting everything inside them
+            if (this.resourceFilter.isExcluded(resource)) {
+                return false;
+            }
+
+            if (Linter.isLintable(resource)) {
+                this.files.add((IFile) resource);
             }
 
             return true;
         }
     }
 
-    private class DeltaVisitor implements IResourceDeltaVisitor {
+    private static class DeltaVisitor implements IResourceDeltaVisitor {
+        private final List<IFile> files = Lists.newArrayList();
+        private final ResourceFilter resourceFilter;
+        private final IProgressMonitor monitor;
+
+        public DeltaVisitor(ResourceFilter resourceFilter, IProgressMonitor monitor) {
+            this.resourceFilter = resourceFilter;
+            this.monitor = monitor;
+        }
+
         @Override
         public boolean visit(IResourceDelta delta) throws CoreException {
+            checkCanceled(this.monitor);
+
             IResource resource = delta.getResource();
+            if (this.resourceFilter.isExcluded(resource)) {
+                return false;
+            }
 
             switch (delta.getKind()) {
                 case IResourceDelta.ADDED:
+                    if (Linter.isLintable(resource)) {
+                        this.files.add((IFile) resource);
+                    }
+                    break;
                 case IResourceDelta.CHANGED:
-                    try {
-                        lint(resource);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
+                    // marker, sync state and encoding changes leave the lint results as they are
+                    if (Linter.isLintable(resource) && (delta.getFlags() & CONTENT_FLAGS) != 0) {
+                        this.files.add((IFile) resource);
+                    }
+                    break;
+                case IResourceDelta.REMOVED:
+                    // the markers went with the file
+                    if (Linter.isLintable(resource)) {
+                        TSLintPlugin.getDefault().getMarkerBudget().remove((IFile) resource);
                     }
                     break;
             }
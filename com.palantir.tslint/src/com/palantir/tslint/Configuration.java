@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+/**
+ * A TSLint configuration file along with the custom rules directories it depends on.
+ * <p>
+ * The rules directories and the {@code linterOptions.exclude} globs are resolved against the
+ * directory of the configuration file, like TSLint does. The configuration is rewritten with the
+ * resolved rules directories so that the bridge doesn't need to know where the file came from.
+ */
+public final class Configuration {
+
+    private static final String RULES_DIRECTORY = "rulesDirectory";
+
+    private final String json;
+    private final List<File> rulesDirectories;
+    private final List<String> excludes;
+
+    private Configuration(String json, List<File> rulesDirectories, List<String> excludes) {
+        this.json = json;
+        this.rulesDirectories = rulesDirectories;
+        this.excludes = excludes;
+    }
+
+    public static Configuration read(File configurationFile) throws IOException {
+        checkNotNull(configurationFile);
+
+        String contents = Files.toString(configurationFile, Charsets.UTF_8);
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
+        JsonNode root;
+        try {
+            root = mapper.readTree(contents);
+        } catch (IOException e) {
+            // let TSLint report the broken configuration
+            return new Configuration(contents, ImmutableList.<File> of(), ImmutableList.<String> of());
+        }
+        if (!(root instanceof ObjectNode)) {
+            return new Configuration(contents, ImmutableList.<File> of(), ImmutableList.<String> of());
+        }
+
+        ImmutableList.Builder<File> rulesDirectories = ImmutableList.builder();
+        File configurationDirectory = configurationFile.getAbsoluteFile().getParentFile();
+        ArrayNode resolvedRulesDirectories = mapper.createArrayNode();
+        for (JsonNode node : getValues(root.path(RULES_DIRECTORY))) {
+            File rulesDirectory = new File(node.asText());
+            if (!rulesDirectory.isAbsolute()) {
+                rulesDirectory = new File(configurationDirectory, node.asText());
+            }
+
+            rulesDirectories.add(rulesDirectory);
+            resolvedRulesDirectories.add(rulesDirectory.getAbsolutePath());
+        }
+        ((ObjectNode) root).put(RULES_DIRECTORY, resolvedRulesDirectories);
+
+        ImmutableList.Builder<String> excludes = ImmutableList.builder();
+        for (JsonNode node : getValues(root.path("linterOptions").path("exclude"))) {
+            excludes.add(GlobMatcher.resolve(configurationDirectory.getPath(), node.asText()));
+        }
+
+        return new Configuration(mapper.writeValueAsString(root), rulesDirectories.build(), excludes.build());
+    }
+
+    /**
+     * Returns the configuration to hand to the bridge.
+     */
+    public String getJson() {
+        return this.json;
+    }
+
+    public List<File> getRulesDirectories() {
+        return this.rulesDirectories;
+    }
+
+    /**
+     * Returns the absolute globs of the files which should not be linted, see {@link GlobMatcher}.
+     */
+    public List<String> getExcludes() {
+        return this.excludes;
+    }
+
+    /**
+     * Computes a hash which changes whenever the configuration or one of its custom rules changes.
+     */
+    public String getHash() throws IOException {
+        Hasher hasher = Hashing.sha1().newHasher();
+        hasher.putString(this.json, Charsets.UTF_8);
+
+        for (File rulesFile : getRulesFiles(this.rulesDirectories)) {
+            hasher.putString(rulesFile.getPath(), Charsets.UTF_8);
+            hasher.putBytes(Files.toByteArray(rulesFile));
+        }
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Computes a cheap stamp of the rules directories, which changes whenever a rule is added,
+     * removed or modified.
+     */
+    public static String getRulesStamp(List<File> rulesDirectories) {
+        checkNotNull(rulesDirectories);
+
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (File rulesFile : getRulesFiles(rulesDirectories)) {
+            hasher.putString(rulesFile.getPath(), Charsets.UTF_8);
+            hasher.putLong(rulesFile.lastModified());
+            hasher.putLong(rulesFile.length());
+        }
+
+        return hasher.hash().toString();
+    }
+
+    private static Iterable<JsonNode> getValues(JsonNode node) {
+        // options which take a list may also be given a single value
+        if (node.isTextual()) {
+            return ImmutableList.of(node);
+        }
+
+        return node;
+    }
+
+    private static List<File> getRulesFiles(List<File> rulesDirectories) {
+        ImmutableList.Builder<File> rulesFiles = ImmutableList.builder();
+
+        // TSLint only loads the rules at the top level of a rules directory
+        for (File rulesDirectory : rulesDirectories) {
+            File[] files = rulesDirectory.listFiles();
+            if (files == null) {
+                continue;
+            }
+
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.isFile() && file.getName().endsWith(".js")) {
+                    rulesFiles.add(file);
+                }
+            }
+        }
+
+        return rulesFiles.build();
+    }
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModelExtension;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IPropertyListener;
+import org.eclipse.ui.texteditor.ITextEditor;
+import org.eclipse.ui.texteditor.MarkerAnnotation;
+import org.eclipse.ui.texteditor.MarkerUtilities;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * Lints the unsaved contents of an editor as the user types and shows the failures as temporary
+ * annotations.
+ * <p>
+ * Keystrokes are debounced, and at most one request per editor is in flight at a time: changes
+ * made while a request is outstanding are coalesced into a single follow-up request, and results
+ * for contents which have since changed are dropped. The debounce delay grows with the observed
+ * round-trip time so that slow files don't queue up work.
+ * <p>
+ * The bridge keeps the contents it was last sent, so after the first request only the edits made
+ * since are sent and the bridge only parses the edited ranges again. The full contents are sent
+ * again whenever the bridge lost track of them, for example because it was restarted.
+ * <p>
+ * While the temporary annotations are shown, the annotations of the file's TSLint markers are
+ * hidden, since they describe the saved contents and would otherwise show every failure twice.
+ */
+final class DocumentLinter implements IDocumentListener, IPropertyListener {
+
+    public static final String ANNOTATION_TYPE = "com.palantir.tslint.lintAsYouTypeProblem";
+
+    private static final long MINIMUM_DELAY = 300;
+
+    // beyond this many characters of edits, sending the whole contents is just as cheap
+    private static final int MAXIMUM_EDIT_LENGTH = 64 * 1024;
+
+    // the versions of the contents are unique across editors, so they can't be mixed up by the bridge
+    private static final AtomicLong NEXT_CONTENTS_VERSION = new AtomicLong();
+
+    private final ITextEditor editor;
+    private final IFile file;
+    private final IDocument document;
+    private final IAnnotationModel annotationModel;
+    private final Job job;
+    private final Job annotationJob;
+    private final List<TextEdit> edits;
+    private final List<Long> editVersions;
+
+    private long documentVersion;
+    private long contentsVersion;
+    private int changesInProgress;
+    private long bridgeVersion;
+    private long editsBaseVersion;
+    private int editLength;
+    private boolean requestInFlight;
+    private boolean requestPending;
+    private long lastRoundTripMillis;
+    private List<RuleFailure> annotationFailures;
+    private boolean annotationsTemporary;
+    private long annotationVersion;
+
+    // only used by the annotation job
+    private List<Annotation> annotations;
+    private Set<Annotation> hiddenMarkerAnnotations;
+
+    public DocumentLinter(ITextEditor editor, IFile file, IDocument document, IAnnotationModel annotationModel) {
+        checkNotNull(editor);
+        checkNotNull(file);
+        checkNotNull(document);
+        checkNotNull(annotationModel);
+
+        this.editor = editor;
+        this.file = file;
+        this.document = document;
+        this.annotationModel = annotationModel;
+        this.job = new LintJob();
+        this.annotationJob = new AnnotationJob();
+        this.annotations = ImmutableList.of();
+        this.hiddenMarkerAnnotations = Sets.newHashSet();
+        this.contentsVersion = NEXT_CONTENTS_VERSION.incrementAndGet();
+        this.bridgeVersion = -1;
+        this.editsBaseVersion = -1;
+        this.edits = Lists.newArrayList();
+        this.editVersions = Lists.newArrayList();
+    }
+
+    public void install() {
+        this.document.addDocumentListener(this);
+        this.editor.addPropertyListener(this);
+    }
+
+    public void uninstall() {
+        this.document.removeDocumentListener(this);
+        this.editor.removePropertyListener(this);
+        this.job.cancel();
+
+        synchronized (this) {
+            this.documentVersion++;
+            this.showAnnotations(this.documentVersion, ImmutableList.<RuleFailure> of(), false);
+        }
+    }
+
+    @Override
+    public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+        this.changesInProgress++;
+    }
+
+    @Override
+    public void documentChanged(DocumentEvent event) {
+        long delay;
+        synchronized (this) {
+            this.changesInProgress--;
+            this.documentVersion++;
+            this.contentsVersion = NEXT_CONTENTS_VERSION.incrementAndGet();
+            delay = Math.max(MINIMUM_DELAY, this.lastRoundTripMillis);
+
+            if (this.editsBaseVersion >= 0) {
+                String text = event.getText() != null ? event.getText() : "";
+
+                this.edits.add(new TextEdit(event.getOffset(), event.getLength(), text));
+                this.editVersions.add(this.contentsVersion);
+                this.editLength += text.length();
+
+                if (this.editLength > MAXIMUM_EDIT_LENGTH) {
+                    this.stopRecordingEdits();
+                }
+            }
+        }
+
+        // supersede any lint which hasn't started yet
+        this.job.cancel();
+        this.job.schedule(delay);
+    }
+
+    @Override
+    public void propertyChanged(Object source, int propId) {
+        // once the editor is saved the builder's markers take over
+        if (propId == IEditorPart.PROP_DIRTY && !this.editor.isDirty()) {
+            this.job.cancel();
+
+            synchronized (this) {
+                this.documentVersion++;
+                this.showAnnotations(this.documentVersion, ImmutableList.<RuleFailure> of(), false);
+            }
+        }
+    }
+
+    private void lint() {
+        final long version;
+        final long contentsVersion;
+        long baseVersion;
+        List<TextEdit> edits = null;
+        synchronized (this) {
+            // coalesce with the request which is already in flight
+            if (this.requestInFlight) {
+                this.requestPending = true;
+                return;
+            }
+
+            // the change will schedule another lint once it's done
+            if (this.changesInProgress > 0) {
+                return;
+            }
+
+            this.requestInFlight = true;
+            version = this.documentVersion;
+            contentsVersion = this.contentsVersion;
+            baseVersion = this.bridgeVersion;
+
+            if (baseVersion >= 0 && this.editsBaseVersion >= 0 && this.editsBaseVersion <= baseVersion) {
+                edits = ImmutableList.copyOf(this.edits);
+            }
+        }
+
+        // the contents are read without holding the lock, so make sure they match the version
+        String contents = null;
+        if (edits == null) {
+            contents = this.document.get();
+
+            synchronized (this) {
+                if (this.contentsVersion != contentsVersion || this.changesInProgress > 0) {
+                    this.requestInFlight = false;
+                    return;
+                }
+
+                // later edits build on these contents
+                this.stopRecordingEdits();
+                this.editsBaseVersion = contentsVersion;
+            }
+        }
+
+        final long startTime = System.nanoTime();
+        ListenableFuture<List<RuleFailure>> future;
+        try {
+            IProject project = this.file.getProject();
+            Linter linter = TSLintPlugin.getDefault().getLinter(project);
+            String configurationPath = Builder.getConfigurationPath(project);
+
+            if (edits != null) {
+                future = linter.lintEditsAsync(this.file, baseVersion, contentsVersion, edits, configurationPath);
+            } else {
+                future = linter.lintContentsAsync(this.file, contents, contentsVersion, configurationPath);
+            }
+        } catch (IOException e) {
+            future = Futures.immediateFailedFuture(e);
+        } catch (RuntimeException e) {
+            future = Futures.immediateFailedFuture(e);
+        }
+
+        Futures.addCallback(future, new FutureCallback<List<RuleFailure>>() {
+            @Override
+            public void onSuccess(List<RuleFailure> ruleFailures) {
+                DocumentLinter.this.finish(version, contentsVersion, startTime, ruleFailures);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                String message = "Could not lint " + DocumentLinter.this.file.getFullPath();
+                TSLintPlugin.getDefault().getLog().log(new Status(IStatus.ERROR, TSLintPlugin.ID, message, t));
+
+                DocumentLinter.this.finish(version, -1, startTime, null);
+            }
+        });
+    }
+
+    /**
+     * @param contentsVersion the version of the contents the bridge now has, or -1 if it's unknown
+     * @param ruleFailures the failures of the contents, or null if they couldn't be linted
+     */
+    private void finish(long version, long contentsVersion, long startTime, List<RuleFailure> ruleFailures) {
+        boolean requestPending;
+        synchronized (this) {
+            this.requestInFlight = false;
+            this.lastRoundTripMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+            // drop the results if the contents changed in the meantime
+            if (ruleFailures != null && version == this.documentVersion) {
+                this.showAnnotations(version, ruleFailures, true);
+            }
+
+            if (ruleFailures != null) {
+                this.bridgeVersion = contentsVersion;
+
+                // the bridge has the edits up to this version now
+                while (!this.editVersions.isEmpty() && this.editVersions.get(0) <= contentsVersion) {
+                    this.editLength -= this.edits.remove(0).getText().length();
+                    this.editVersions.remove(0);
+                }
+            } else {
+                this.bridgeVersion = -1;
+
+                // the bridge lost track of the contents, so send them in full
+                if (contentsVersion >= 0) {
+                    this.requestPending = true;
+                }
+            }
+
+            requestPending = this.requestPending;
+            this.requestPending = false;
+        }
+
+        if (requestPending) {
+            this.job.schedule();
+        }
+    }
+
+    private void stopRecordingEdits() {
+        this.editsBaseVersion = -1;
+        this.edits.clear();
+        this.editVersions.clear();
+        this.editLength = 0;
+    }
+
+    /**
+     * Hands the failures over to the annotation job, so that the thread which reads the bridge's
+     * responses doesn't wait for the annotation model. Failures which haven't been shown yet are
+     * replaced.
+     *
+     * @param temporary whether the failures are those of unsaved contents, which replace the
+     *            file's markers until they are cleared again
+     */
+    private void showAnnotations(long version, List<RuleFailure> ruleFailures, boolean temporary) {
+        this.annotationFailures = ruleFailures;
+        this.annotationsTemporary = temporary;
+        this.annotationVersion = version;
+        this.annotationJob.schedule();
+    }
+
+    /**
+     * Replaces the annotations with those of the failures, only ever called by the annotation job.
+     */
+    private void updateAnnotations(List<RuleFailure> ruleFailures, boolean temporary) {
+        Map<Annotation, Position> newAnnotations = Maps.newHashMap();
+        for (RuleFailure ruleFailure : ruleFailures) {
+            Annotation annotation = new Annotation(ANNOTATION_TYPE, false, ruleFailure.getFailure());
+            int start = ruleFailure.getStartPosition().getPosition();
+            int end = ruleFailure.getEndPosition().getPosition();
+
+            newAnnotations.put(annotation, new Position(start, end - start));
+        }
+
+        if (this.annotationModel instanceof IAnnotationModelExtension) {
+            Annotation[] oldAnnotations = this.annotations.toArray(new Annotation[this.annotations.size()]);
+
+            ((IAnnotationModelExtension) this.annotationModel).replaceAnnotations(oldAnnotations, newAnnotations);
+        } else {
+            for (Annotation annotation : this.annotations) {
+                this.annotationModel.removeAnnotation(annotation);
+            }
+            for (Map.Entry<Annotation, Position> entry : newAnnotations.entrySet()) {
+                this.annotationModel.addAnnotation(entry.getKey(), entry.getValue());
+            }
+        }
+
+        this.annotations = ImmutableList.copyOf(newAnnotations.keySet());
+
+        this.hideMarkerAnnotations(temporary);
+    }
+
+    /**
+     * Hides the annotations of the file's TSLint markers, or shows the ones hidden earlier again.
+     * Markers created while the annotations are hidden, such as by a build of the saved contents,
+     * are hidden as well.
+     */
+    private void hideMarkerAnnotations(boolean hide) {
+        List<Annotation> changedAnnotations = Lists.newArrayList();
+
+        if (hide) {
+            Iterator<?> iterator = this.annotationModel.getAnnotationIterator();
+            while (iterator.hasNext()) {
+                Object annotation = iterator.next();
+
+                if (annotation instanceof MarkerAnnotation) {
+                    MarkerAnnotation markerAnnotation = (MarkerAnnotation) annotation;
+
+                    if (!markerAnnotation.isMarkedDeleted()
+                            && MarkerUtilities.isMarkerType(markerAnnotation.getMarker(), Linter.MARKER_TYPE)) {
+                        markerAnnotation.markDeleted(true);
+                        this.hiddenMarkerAnnotations.add(markerAnnotation);
+                        changedAnnotations.add(markerAnnotation);
+                    }
+                }
+            }
+        } else {
+            for (Annotation annotation : this.hiddenMarkerAnnotations) {
+                annotation.markDeleted(false);
+                changedAnnotations.add(annotation);
+            }
+
+            this.hiddenMarkerAnnotations.clear();
+        }
+
+        // let the editor repaint the annotations, ignoring the ones which were removed in the meantime
+        for (Annotation annotation : changedAnnotations) {
+            Position position = this.annotationModel.getPosition(annotation);
+
+            if (position == null) {
+                continue;
+            }
+
+            if (this.annotationModel instanceof IAnnotationModelExtension) {
+                ((IAnnotationModelExtension) this.annotationModel).modifyAnnotationPosition(annotation, position);
+            } else {
+                this.annotationModel.removeAnnotation(annotation);
+                this.annotationModel.addAnnotation(annotation, position);
+            }
+        }
+    }
+
+    private final class AnnotationJob extends Job {
+
+        public AnnotationJob() {
+            super("TSLint annotations " + DocumentLinter.this.file.getName());
+
+            this.setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            List<RuleFailure> ruleFailures;
+            boolean temporary;
+            synchronized (DocumentLinter.this) {
+                ruleFailures = DocumentLinter.this.annotationFailures;
+                temporary = DocumentLinter.this.annotationsTemporary;
+                DocumentLinter.this.annotationFailures = null;
+
+                // the contents changed again since, and the next results will replace these
+                if (ruleFailures == null || DocumentLinter.this.annotationVersion != DocumentLinter.this.documentVersion) {
+                    return Status.OK_STATUS;
+                }
+            }
+
+            DocumentLinter.this.updateAnnotations(ruleFailures, temporary);
+
+            return Status.OK_STATUS;
+        }
+    }
+
+    private final class LintJob extends Job {
+
+        public LintJob() {
+            super("TSLint " + DocumentLinter.this.file.getName());
+
+            this.setSystem(true);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            if (!monitor.isCanceled()) {
+                DocumentLinter.this.lint();
+            }
+
+            return Status.OK_STATUS;
+        }
+    }
+}
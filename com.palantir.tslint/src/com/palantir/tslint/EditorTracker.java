@@ -0,0 +1,205 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IEditorReference;
+import org.eclipse.ui.IPartListener2;
+import org.eclipse.ui.IStartup;
+import org.eclipse.ui.IWindowListener;
+import org.eclipse.ui.IWorkbench;
+import org.eclipse.ui.IWorkbenchPage;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchPartReference;
+import org.eclipse.ui.IWorkbenchWindow;
+import org.eclipse.ui.PlatformUI;
+import org.eclipse.ui.texteditor.IDocumentProvider;
+import org.eclipse.ui.texteditor.ITextEditor;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Attaches a {@link DocumentLinter} to every open editor of a TypeScript file in a project with the
+ * TSLint nature, and tells the {@link LintScheduler} which files are open.
+ * <p>
+ * All of the listener methods are called on the UI thread.
+ */
+public final class EditorTracker implements IStartup, IWindowListener, IPartListener2 {
+
+    private final Map<IWorkbenchPartReference, IFile> openFiles = Maps.newHashMap();
+    private final Map<IWorkbenchPartReference, DocumentLinter> documentLinters = Maps.newHashMap();
+
+    @Override
+    public void earlyStartup() {
+        final IWorkbench workbench = PlatformUI.getWorkbench();
+
+        workbench.getDisplay().asyncExec(new Runnable() {
+            @Override
+            public void run() {
+                workbench.addWindowListener(EditorTracker.this);
+
+                for (IWorkbenchWindow window : workbench.getWorkbenchWindows()) {
+                    windowOpened(window);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void windowOpened(IWorkbenchWindow window) {
+        window.getPartService().addPartListener(this);
+
+        for (IWorkbenchPage page : window.getPages()) {
+            for (IEditorReference editorReference : page.getEditorReferences()) {
+                this.partOpened(editorReference);
+            }
+        }
+    }
+
+    @Override
+    public void windowClosed(IWorkbenchWindow window) {
+        window.getPartService().removePartListener(this);
+    }
+
+    @Override
+    public void windowActivated(IWorkbenchWindow window) {
+    }
+
+    @Override
+    public void windowDeactivated(IWorkbenchWindow window) {
+    }
+
+    @Override
+    public void partOpened(IWorkbenchPartReference partReference) {
+        if (this.openFiles.containsKey(partReference)) {
+            return;
+        }
+
+        IWorkbenchPart part = partReference.getPart(false);
+        IFile file = getFile(part);
+        if (file == null) {
+            return;
+        }
+
+        this.openFiles.put(partReference, file);
+        TSLintPlugin.getDefault().getLintScheduler().editorOpened(file);
+
+        DocumentLinter documentLinter = createDocumentLinter((ITextEditor) part, file);
+        if (documentLinter != null) {
+            documentLinter.install();
+            this.documentLinters.put(partReference, documentLinter);
+        }
+    }
+
+    @Override
+    public void partClosed(IWorkbenchPartReference partReference) {
+        IFile file = this.openFiles.remove(partReference);
+        if (file != null) {
+            TSLintPlugin.getDefault().getLintScheduler().editorClosed(file);
+        }
+
+        DocumentLinter documentLinter = this.documentLinters.remove(partReference);
+
+        if (documentLinter != null) {
+            documentLinter.uninstall();
+        }
+    }
+
+    @Override
+    public void partInputChanged(IWorkbenchPartReference partReference) {
+        this.partClosed(partReference);
+        this.partOpened(partReference);
+    }
+
+    @Override
+    public void partActivated(IWorkbenchPartReference partReference) {
+    }
+
+    @Override
+    public void partBroughtToTop(IWorkbenchPartReference partReference) {
+    }
+
+    @Override
+    public void partDeactivated(IWorkbenchPartReference partReference) {
+    }
+
+    @Override
+    public void partHidden(IWorkbenchPartReference partReference) {
+    }
+
+    @Override
+    public void partVisible(IWorkbenchPartReference partReference) {
+        // editors which were restored lazily only have a part once they become visible
+        this.partOpened(partReference);
+    }
+
+    /**
+     * Returns the file of a text editor if it's a file which is linted, or else null.
+     */
+    private static IFile getFile(IWorkbenchPart part) {
+        if (!(part instanceof ITextEditor)) {
+            return null;
+        }
+
+        IEditorInput editorInput = ((ITextEditor) part).getEditorInput();
+        IFile file = (IFile) editorInput.getAdapter(IFile.class);
+        if (file == null || !Linter.isLintable(file)) {
+            return null;
+        }
+
+        return file;
+    }
+
+    private static DocumentLinter createDocumentLinter(ITextEditor editor, IFile file) {
+        if (!isLintAsYouTypeEnabled(file.getProject())) {
+            return null;
+        }
+
+        IEditorInput editorInput = editor.getEditorInput();
+        IDocumentProvider documentProvider = editor.getDocumentProvider();
+        if (documentProvider == null) {
+            return null;
+        }
+
+        IDocument document = documentProvider.getDocument(editorInput);
+        IAnnotationModel annotationModel = documentProvider.getAnnotationModel(editorInput);
+        if (document == null || annotationModel == null) {
+            return null;
+        }
+
+        return new DocumentLinter(editor, file, document, annotationModel);
+    }
+
+    private static boolean isLintAsYouTypeEnabled(IProject project) {
+        try {
+            if (!project.isOpen() || !project.hasNature(ProjectNature.NATURE_ID)) {
+                return false;
+            }
+        } catch (CoreException e) {
+            throw new RuntimeException(e);
+        }
+
+        return Builder.getPreferences(project).getBoolean("lintAsYouType", true);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Matches paths against a set of glob patterns, which are compiled into a single regular
+ * expression up front.
+ * <p>
+ * Paths use forward slashes, see {@link #toPath(String)}. A {@code *} matches within a single path
+ * segment, {@code ?} matches a single character within a segment and {@code **} matches any number
+ * of segments, including none, so that {@code dir/**} also matches {@code dir} itself.
+ */
+public final class GlobMatcher {
+
+    private final Pattern pattern;
+
+    public GlobMatcher(Collection<String> globs) {
+        checkNotNull(globs);
+
+        if (globs.isEmpty()) {
+            this.pattern = null;
+        } else {
+            List<String> regexes = Lists.newArrayList();
+            for (String glob : globs) {
+                regexes.add("(?:" + toRegex(glob) + ")");
+            }
+
+            this.pattern = Pattern.compile(Joiner.on('|').join(regexes));
+        }
+    }
+
+    public boolean matches(String path) {
+        checkNotNull(path);
+
+        return this.pattern != null && this.pattern.matcher(path).matches();
+    }
+
+    /**
+     * Makes a glob which is relative to the given directory absolute.
+     */
+    public static String resolve(String directory, String glob) {
+        checkNotNull(directory);
+        checkNotNull(glob);
+
+        directory = toPath(directory);
+        glob = toPath(glob);
+
+        // globs may already be absolute, on Windows including a drive letter
+        if (glob.startsWith("/") || (glob.length() > 1 && glob.charAt(1) == ':')) {
+            return glob;
+        }
+        if (glob.startsWith("./")) {
+            glob = glob.substring(2);
+        }
+
+        return directory + "/" + glob;
+    }
+
+    /**
+     * Converts a file system path to the form the globs are matched against.
+     */
+    public static String toPath(String path) {
+        return path.replace('\\', '/');
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 2;
+            } else if (glob.startsWith("/**", i) && i + 3 == glob.length()) {
+                regex.append("(?:/.*)?");
+                i += 2;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return regex.toString();
+    }
+}
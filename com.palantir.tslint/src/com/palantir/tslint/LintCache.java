@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.palantir.tslint.failure.FailureStore;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.failure.RuleFailureParser;
+
+/**
+ * A persistent cache of lint results.
+ * <p>
+ * Results are keyed by a hash of the file's path and contents, the configuration and the TSLint
+ * version, so a hit is only possible if linting the file again would produce the same failures.
+ * The cache keeps the most recently used entries up to a maximum size and is written to disk so
+ * that it survives restarts.
+ */
+final class LintCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 20000;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.sha1();
+    private static final RuleFailureParser RULE_FAILURE_PARSER = new RuleFailureParser();
+
+    private final File cacheFile;
+    private final String tslintVersion;
+    private final int maximumSize;
+    private final ObjectMapper mapper;
+
+    private Map<String, List<RuleFailure>> entries;
+    private boolean dirty;
+
+    public LintCache(File cacheFile, String tslintVersion) {
+        this(cacheFile, tslintVersion, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public LintCache(File cacheFile, String tslintVersion, int maximumSize) {
+        checkNotNull(cacheFile);
+        checkNotNull(tslintVersion);
+        checkArgument(maximumSize > 0);
+
+        this.cacheFile = cacheFile;
+        this.tslintVersion = tslintVersion;
+        this.maximumSize = maximumSize;
+        this.mapper = new ObjectMapper();
+    }
+
+    /**
+     * Computes the key of a file's lint results.
+     */
+    public String getKey(File file, String configurationHash) throws IOException {
+        checkNotNull(file);
+        checkNotNull(configurationHash);
+
+        return HASH_FUNCTION.newHasher()
+            .putString(this.tslintVersion, Charsets.UTF_8)
+            .putString(configurationHash, Charsets.UTF_8)
+            .putString(file.getAbsolutePath(), Charsets.UTF_8)
+            .putBytes(Files.toByteArray(file))
+            .hash()
+            .toString();
+    }
+
+    /**
+     * Returns the cached rule failures for the key or null if there are none.
+     */
+    public synchronized List<RuleFailure> get(String key) {
+        checkNotNull(key);
+
+        return this.getEntries().get(key);
+    }
+
+    public synchronized void put(String key, List<RuleFailure> ruleFailures) {
+        checkNotNull(key);
+        checkNotNull(ruleFailures);
+
+        // the cache holds on to the failures of thousands of files, so keep them compact
+        this.getEntries().put(key, FailureStore.copyOf(ruleFailures));
+        this.dirty = true;
+    }
+
+    public synchronized void clear() {
+        this.getEntries().clear();
+        this.dirty = true;
+    }
+
+    /**
+     * Writes the cache to disk if it changed since it was loaded or last saved.
+     */
+    public synchronized void save() throws IOException {
+        if (!this.dirty) {
+            return;
+        }
+
+        // write to a temporary file first so that a failed write doesn't lose the existing cache
+        File tempFile = new File(this.cacheFile.getPath() + ".tmp");
+        Files.createParentDirs(tempFile);
+        this.mapper.writeValue(tempFile, this.entries);
+        if (this.cacheFile.exists() && !this.cacheFile.delete()) {
+            throw new IOException("Could not replace " + this.cacheFile);
+        }
+        Files.move(tempFile, this.cacheFile);
+
+        this.dirty = false;
+    }
+
+    private Map<String, List<RuleFailure>> getEntries() {
+        if (this.entries == null) {
+            this.entries = new LinkedHashMap<String, List<RuleFailure>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<RuleFailure>> eldest) {
+                    return this.size() > LintCache.this.maximumSize;
+                }
+            };
+
+            if (this.cacheFile.exists()) {
+                try {
+                    // the entries are keyed like the failures of a batch, only by hash rather than path
+                    JsonParser parser = this.mapper.getFactory().createParser(this.cacheFile);
+                    try {
+                        this.entries.putAll(RULE_FAILURE_PARSER.parse(parser));
+                    } finally {
+                        parser.close();
+                    }
+                } catch (IOException e) {
+                    // a corrupt cache is simply discarded
+                    this.dirty = true;
+                }
+            }
+        }
+
+        return this.entries;
+    }
+}
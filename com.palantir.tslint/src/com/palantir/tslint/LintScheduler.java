@@ -0,0 +1,535 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+
+/**
+ * Lints files in the background, so that builds only have to hand over the files which need
+ * linting rather than wait for the results.
+ * <p>
+ * Files are queued per project and priority. Files open in editors come first, then the files
+ * which were just edited, then everything else, such as the files of a full build. A file which is
+ * queued more than once is linted once, at the highest of its priorities.
+ * <p>
+ * A few jobs take batches off the queues, each from the project with the highest priority files
+ * which was served least recently, so that a project with thousands of files doesn't hold up the
+ * others.
+ * <p>
+ * A file which is scheduled again while it's being linted is held back until its batch is done,
+ * since batches finish in any order and the older results would otherwise overwrite the newer
+ * markers. Cancelling a job pauses the project it was linting until more of its files are
+ * scheduled.
+ */
+final class LintScheduler {
+
+    public static final Object FAMILY = LintScheduler.class;
+
+    public enum Priority {
+        OPEN_EDITOR,
+        RECENTLY_EDITED,
+        BACKGROUND
+    }
+
+    // in the order the projects are served, the project which was served last goes to the end
+    private final Map<IProject, ProjectQueue> queues;
+    private final Multiset<IFile> openFiles;
+    private final List<LintJob> idleJobs;
+
+    // the files of the batches being linted, and the files scheduled again in the meantime
+    private final Set<IFile> lintingFiles;
+    private final Map<IFile, Priority> heldFiles;
+
+    // cancelling a job pauses its project until more of its files are scheduled
+    private final Set<IProject> pausedProjects;
+    private int activeJobCount;
+    private boolean disposed;
+
+    // the files taken off the queues since the jobs were last idle, for the progress of the jobs
+    private int lintingFileCount;
+    private int lintedFileCount;
+
+    /**
+     * @param jobCount the number of files which may be linted at the same time, which is best
+     *            matched to the number of node processes
+     */
+    public LintScheduler(int jobCount) {
+        checkArgument(jobCount > 0);
+
+        this.queues = Maps.newLinkedHashMap();
+        this.openFiles = HashMultiset.create();
+        this.idleJobs = Lists.newArrayList();
+        this.lintingFiles = Sets.newHashSet();
+        this.heldFiles = Maps.newLinkedHashMap();
+        this.pausedProjects = Sets.newHashSet();
+
+        for (int i = 0; i < jobCount; i++) {
+            this.idleJobs.add(new LintJob());
+        }
+    }
+
+    /**
+     * Queues the files of a project for linting. Files which are open in an editor get the
+     * priority of an open editor anyway.
+     */
+    public void schedule(IProject project, Collection<IFile> files, Priority priority) {
+        checkNotNull(project);
+        checkNotNull(files);
+        checkNotNull(priority);
+
+        if (files.isEmpty()) {
+            return;
+        }
+
+        List<LintJob> jobs;
+        synchronized (this) {
+            if (this.disposed) {
+                return;
+            }
+
+            for (IFile file : files) {
+                this.queue(project, file, this.openFiles.contains(file) ? Priority.OPEN_EDITOR : priority);
+            }
+
+            this.pausedProjects.remove(project);
+            jobs = this.activateJobs();
+        }
+
+        for (LintJob job : jobs) {
+            job.schedule();
+        }
+    }
+
+    /**
+     * Drops the queued files of a project, for example because its markers were removed by a clean.
+     */
+    public synchronized void unschedule(IProject project) {
+        checkNotNull(project);
+
+        this.queues.remove(project);
+        this.pausedProjects.remove(project);
+
+        for (Iterator<IFile> iterator = this.heldFiles.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().getProject().equals(project)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Called when an editor opens a file, which then takes precedence over the files which aren't
+     * open.
+     */
+    public synchronized void editorOpened(IFile file) {
+        checkNotNull(file);
+
+        this.openFiles.add(file);
+
+        ProjectQueue queue = this.queues.get(file.getProject());
+        if (queue != null) {
+            queue.promote(file, Priority.OPEN_EDITOR);
+        }
+        if (this.heldFiles.containsKey(file)) {
+            this.heldFiles.put(file, Priority.OPEN_EDITOR);
+        }
+    }
+
+    public synchronized void editorClosed(IFile file) {
+        checkNotNull(file);
+
+        this.openFiles.remove(file);
+    }
+
+    /**
+     * Stops linting and drops the files which are still queued.
+     */
+    public void dispose() {
+        synchronized (this) {
+            this.disposed = true;
+            this.queues.clear();
+            this.heldFiles.clear();
+        }
+
+        Job.getJobManager().cancel(FAMILY);
+    }
+
+    private List<LintJob> activateJobs() {
+        // there's no point in starting more jobs than there are batches
+        int batchCount = 0;
+        for (Map.Entry<IProject, ProjectQueue> entry : this.queues.entrySet()) {
+            if (!this.pausedProjects.contains(entry.getKey())) {
+                batchCount += entry.getValue().getBatchCount(getBatchSize(entry.getKey()));
+            }
+        }
+
+        List<LintJob> jobs = Lists.newArrayList();
+        while (!this.idleJobs.isEmpty() && jobs.size() < batchCount) {
+            jobs.add(this.idleJobs.remove(this.idleJobs.size() - 1));
+            this.activeJobCount++;
+        }
+
+        return jobs;
+    }
+
+    /**
+     * Takes the next batch off the queues, or returns the job to the idle ones if there's nothing
+     * left to lint.
+     *
+     * @return the next batch, or null if the job should stop
+     */
+    private synchronized Batch next(LintJob job) {
+        Priority highestPriority = null;
+        for (Map.Entry<IProject, ProjectQueue> entry : this.queues.entrySet()) {
+            Priority priority = entry.getValue().getHighestPriority();
+
+            if (priority != null && !this.pausedProjects.contains(entry.getKey())
+                    && (highestPriority == null || priority.compareTo(highestPriority) < 0)) {
+                highestPriority = priority;
+            }
+        }
+
+        if (highestPriority == null || this.disposed) {
+            this.idleJobs.add(job);
+            this.activeJobCount--;
+
+            // the progress starts over with the next files to be scheduled
+            if (this.activeJobCount == 0) {
+                this.lintedFileCount = 0;
+            }
+
+            return null;
+        }
+
+        // serve the first project with files of that priority and move it to the back of the line
+        Iterator<Map.Entry<IProject, ProjectQueue>> iterator = this.queues.entrySet().iterator();
+        while (true) {
+            Map.Entry<IProject, ProjectQueue> entry = iterator.next();
+            IProject project = entry.getKey();
+            ProjectQueue queue = entry.getValue();
+
+            if (queue.getHighestPriority() == highestPriority && !this.pausedProjects.contains(project)) {
+                List<IFile> files = queue.take(highestPriority, getBatchSize(project));
+
+                iterator.remove();
+                if (!queue.isEmpty()) {
+                    this.queues.put(project, queue);
+                }
+
+                this.lintingFiles.addAll(files);
+                this.lintingFileCount += files.size();
+
+                return new Batch(project, files, highestPriority);
+            }
+        }
+    }
+
+    /**
+     * Puts back the files of a batch whose job was cancelled and pauses its project, so that the
+     * files are linted once more files of the project are scheduled.
+     */
+    private synchronized void cancelled(LintJob job, Batch batch) {
+        this.pausedProjects.add(batch.project);
+        this.idleJobs.add(job);
+        this.activeJobCount--;
+        this.lintingFileCount -= batch.files.size();
+
+        this.release(batch);
+        for (IFile file : batch.files) {
+            this.queue(batch.project, file, batch.priority);
+        }
+    }
+
+    /**
+     * Called once the files of a batch have been linted, or failed to.
+     */
+    private synchronized void finished(Batch batch) {
+        this.lintingFileCount -= batch.files.size();
+        this.lintedFileCount += batch.files.size();
+
+        this.release(batch);
+    }
+
+    /**
+     * Queues the files of a batch which were scheduled again while the batch was being linted.
+     */
+    private void release(Batch batch) {
+        this.lintingFiles.removeAll(batch.files);
+
+        for (IFile file : batch.files) {
+            Priority priority = this.heldFiles.remove(file);
+
+            if (priority != null) {
+                this.queue(batch.project, file, priority);
+            }
+        }
+    }
+
+    /**
+     * Queues a file, or holds it back until its batch is done if it's being linted.
+     */
+    private void queue(IProject project, IFile file, Priority priority) {
+        if (this.disposed) {
+            return;
+        }
+
+        if (this.lintingFiles.contains(file)) {
+            Priority heldPriority = this.heldFiles.get(file);
+
+            if (heldPriority == null || priority.compareTo(heldPriority) < 0) {
+                this.heldFiles.put(file, priority);
+            }
+            return;
+        }
+
+        ProjectQueue queue = this.queues.get(project);
+        if (queue == null) {
+            queue = new ProjectQueue();
+            this.queues.put(project, queue);
+        }
+
+        queue.add(file, priority);
+    }
+
+    /**
+     * Returns the number of files which are queued or being linted, including the given batch.
+     */
+    private synchronized int getRemainingFileCount() {
+        int remainingFileCount = this.lintingFileCount;
+        for (ProjectQueue queue : this.queues.values()) {
+            remainingFileCount += queue.size();
+        }
+
+        return remainingFileCount;
+    }
+
+    private synchronized int getLintedFileCount() {
+        return this.lintedFileCount;
+    }
+
+    private synchronized boolean isIdle() {
+        return this.activeJobCount == 0;
+    }
+
+    private static int getBatchSize(IProject project) {
+        int batchSize = Builder.getPreferences(project).getInt("batchSize", Linter.DEFAULT_BATCH_SIZE);
+
+        // the linter rejects a batch size of zero or less, so a bad preference falls back to the default
+        return batchSize > 0 ? batchSize : Linter.DEFAULT_BATCH_SIZE;
+    }
+
+    private static void lint(Batch batch, IProgressMonitor monitor) throws IOException {
+        // the project may have been closed or deleted since its files were queued
+        if (!batch.project.isAccessible()) {
+            return;
+        }
+
+        Linter linter = TSLintPlugin.getDefault().getLinter(batch.project);
+        String configurationPath = Builder.getConfigurationPath(batch.project);
+
+        linter.setBatchSize(getBatchSize(batch.project));
+        linter.lint(ImmutableList.<IResource> copyOf(batch.files), configurationPath, monitor);
+    }
+
+    /**
+     * The queued files of a project, each at a single priority.
+     */
+    private static final class ProjectQueue {
+
+        private final EnumMap<Priority, Set<IFile>> filesByPriority;
+
+        public ProjectQueue() {
+            this.filesByPriority = new EnumMap<Priority, Set<IFile>>(Priority.class);
+
+            for (Priority priority : Priority.values()) {
+                this.filesByPriority.put(priority, Sets.<IFile> newLinkedHashSet());
+            }
+        }
+
+        public void add(IFile file, Priority priority) {
+            for (Map.Entry<Priority, Set<IFile>> entry : this.filesByPriority.entrySet()) {
+                if (entry.getValue().contains(file)) {
+                    // the file is linted once, at the higher of the two priorities
+                    if (entry.getKey().compareTo(priority) <= 0) {
+                        return;
+                    }
+
+                    entry.getValue().remove(file);
+                    break;
+                }
+            }
+
+            this.filesByPriority.get(priority).add(file);
+        }
+
+        public void promote(IFile file, Priority priority) {
+            for (Set<IFile> files : this.filesByPriority.values()) {
+                if (files.contains(file)) {
+                    this.add(file, priority);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the highest priority of the queued files, or null if there are none.
+         */
+        public Priority getHighestPriority() {
+            for (Map.Entry<Priority, Set<IFile>> entry : this.filesByPriority.entrySet()) {
+                if (!entry.getValue().isEmpty()) {
+                    return entry.getKey();
+                }
+            }
+
+            return null;
+        }
+
+        public int getBatchCount(int batchSize) {
+            int batchCount = 0;
+            for (Set<IFile> files : this.filesByPriority.values()) {
+                batchCount += (files.size() + batchSize - 1) / batchSize;
+            }
+
+            return batchCount;
+        }
+
+        public boolean isEmpty() {
+            return this.getHighestPriority() == null;
+        }
+
+        public int size() {
+            int size = 0;
+            for (Set<IFile> files : this.filesByPriority.values()) {
+                size += files.size();
+            }
+
+            return size;
+        }
+
+        public List<IFile> take(Priority priority, int maximumCount) {
+            List<IFile> files = Lists.newArrayList();
+
+            Iterator<IFile> iterator = this.filesByPriority.get(priority).iterator();
+            while (iterator.hasNext() && files.size() < maximumCount) {
+                files.add(iterator.next());
+                iterator.remove();
+            }
+
+            return files;
+        }
+    }
+
+    private static final class Batch {
+
+        private final IProject project;
+        private final List<IFile> files;
+        private final Priority priority;
+
+        public Batch(IProject project, List<IFile> files, Priority priority) {
+            this.project = project;
+            this.files = files;
+            this.priority = priority;
+        }
+    }
+
+    private final class LintJob extends Job {
+
+        public LintJob() {
+            super("Linting TypeScript");
+
+            this.setPriority(Job.LONG);
+        }
+
+        @Override
+        public boolean belongsTo(Object family) {
+            return family == FAMILY;
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            SubMonitor progress = SubMonitor.convert(monitor);
+
+            Batch batch;
+            while ((batch = next(this)) != null) {
+                // the work left is every file still to be linted, of which this batch gets its share
+                int remainingFileCount = getRemainingFileCount();
+                int lintedFileCount = getLintedFileCount();
+                progress.setTaskName(String.format("Linting %s: %d of %d files",
+                    batch.project.getName(), lintedFileCount + 1, lintedFileCount + remainingFileCount));
+                progress.setWorkRemaining(remainingFileCount);
+
+                try {
+                    lint(batch, progress.newChild(batch.files.size()));
+                } catch (OperationCanceledException e) {
+                    cancelled(this, batch);
+
+                    return Status.CANCEL_STATUS;
+                } catch (IOException e) {
+                    logError(batch, e);
+                } catch (RuntimeException e) {
+                    // a batch which can't be linted shouldn't stop the others
+                    logError(batch, e);
+                }
+
+                finished(batch);
+            }
+
+            // persist the results once everything has been linted rather than only on shutdown
+            if (isIdle()) {
+                try {
+                    TSLintPlugin.getDefault().getLintCache().save();
+                    TSLintPlugin.getDefault().writeRuleProfile();
+                } catch (IOException e) {
+                    return new Status(IStatus.WARNING, TSLintPlugin.ID, "Could not save the lint results", e);
+                }
+            }
+
+            return Status.OK_STATUS;
+        }
+
+        private void logError(Batch batch, Exception e) {
+            String message = "Could not lint " + batch.files.size() + " files of " + batch.project.getName();
+
+            TSLintPlugin.getDefault().getLog().log(new Status(IStatus.ERROR, TSLintPlugin.ID, message, e));
+        }
+    }
+}
@@ -16,97 +16,507 @@
 
 package com.palantir.tslint;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
-import org.eclipse.core.resources.ResourcesPlugin;
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.Path;
-import org.eclipse.ui.texteditor.MarkerUtilities;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.io.Files;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.palantir.tslint.failure.RuleFailure;
-import com.palantir.tslint.failure.RuleFailurePosition;
-import com.palantir.tslint.services.Bridge;
+import com.palantir.tslint.failure.RuleFailureParser;
+import com.palantir.tslint.profile.ProfiledResult;
+import com.palantir.tslint.profile.ProfiledResultParser;
+import com.palantir.tslint.services.BridgeManager;
+import com.palantir.tslint.services.BridgePool;
+import com.palantir.tslint.services.LintMetrics;
 import com.palantir.tslint.services.Request;
 
 final class Linter {
 
     public static final String MARKER_TYPE = "com.palantir.tslint.tslintProblem";
 
-    private Bridge bridge;
+    public static final int DEFAULT_BATCH_SIZE = 50;
+
+    private static final long CANCELLATION_CHECK_INTERVAL_MILLIS = 100;
+
+    private static final RuleFailureParser RULE_FAILURE_PARSER = new RuleFailureParser();
+    private static final ProfiledResultParser PROFILED_RESULT_PARSER = new ProfiledResultParser();
+
+    private final BridgeManager bridgeManager;
+    private final Set<IFile> lintedFiles;
 
-    public Linter() {
-        this.bridge = null;
+    private BridgePool bridgePool;
+    private String configurationPath;
+    private long configurationModificationStamp;
+    private List<File> rulesDirectories;
+    private String rulesStamp;
+    private String configuration;
+    private String configurationHash;
+    private int configurationVersion;
+    private boolean configurationChanged;
+    private boolean disposed;
+    private int batchSize;
+
+    public Linter(BridgeManager bridgeManager) {
+        checkNotNull(bridgeManager);
+
+        this.bridgeManager = bridgeManager;
+        this.lintedFiles = Sets.newLinkedHashSet();
+        this.bridgePool = null;
+        this.rulesDirectories = ImmutableList.of();
+        this.batchSize = DEFAULT_BATCH_SIZE;
     }
 
-    public void lint(IResource resource, String configurationPath) throws IOException {
-        String resourceName = resource.getName();
-        if (resource instanceof IFile &&
-            (resourceName.endsWith(".ts") || resourceName.endsWith(".tsx")) &&
-            !resourceName.endsWith(".d.ts")) {
-            IFile file = (IFile) resource;
-            String resourcePath = resource.getRawLocation().toOSString();
-
-            // remove any pre-existing markers for the given file
-            deleteMarkers(file);
-
-            // get a bridge
-            if (this.bridge == null) {
-                String configuration = Files.toString(new File(configurationPath), Charsets.UTF_8);
-                Request configurationRequest = new Request("setConfiguration", configuration);
-
-                this.bridge = new Bridge();
-                this.bridge.call(configurationRequest, Void.class);
+    /**
+     * Reloads the configuration if it changed since it was last loaded.
+     * <p>
+     * The bridges are shared with every other project which uses the same configuration. A new
+     * configuration is pushed to the running bridges under a new version rather than restarting
+     * them, unless another project is still using them. Changes to the custom rules of the
+     * configuration count as a new configuration too.
+     *
+     * @return true if the configuration changed, in which case the files linted with the previous
+     *         configuration (see {@link #getLintedFiles()}) need to be linted again. Since any lint
+     *         may notice the change first, it's also kept until
+     *         {@link #clearConfigurationChanged()} is called.
+     */
+    public synchronized boolean updateConfiguration(String configurationPath) throws IOException {
+        checkNotNull(configurationPath);
+        // a lint which was already running when the project went away mustn't start node processes again
+        checkState(!this.disposed, "The linter has been disposed.");
+
+        // avoid reading the files if they haven't been touched
+        File configurationFile = new File(configurationPath);
+        long modificationStamp = configurationFile.lastModified();
+        if (configurationPath.equals(this.configurationPath)
+                && modificationStamp == this.configurationModificationStamp
+                && Configuration.getRulesStamp(this.rulesDirectories).equals(this.rulesStamp)) {
+            return false;
+        }
+
+        Configuration configuration = Configuration.read(configurationFile);
+        String configurationHash = configuration.getHash();
+        this.configurationPath = configurationPath;
+        this.configurationModificationStamp = modificationStamp;
+        this.rulesDirectories = configuration.getRulesDirectories();
+        this.rulesStamp = Configuration.getRulesStamp(this.rulesDirectories);
+
+        // the files may have been saved without actually changing
+        if (configurationHash.equals(this.configurationHash)) {
+            return false;
+        }
+
+        String configurationJson = configuration.getJson();
+        if (this.bridgePool == null) {
+            this.bridgePool = this.bridgeManager.acquire(configurationJson);
+        } else if (!configurationJson.equals(this.configuration)) {
+            this.bridgePool = this.bridgeManager.reconfigure(this.bridgePool, configurationJson);
+        } else {
+            // only the rules changed, so have the bridges load them again
+            this.bridgePool.setConfiguration(configurationJson);
+        }
+
+        // the times recorded so far were taken with rules which are no longer the ones in use
+        if (this.configurationHash != null) {
+            TSLintPlugin.getDefault().getRuleProfile().reset();
+        }
+
+        this.configuration = configurationJson;
+        this.configurationHash = configurationHash;
+        this.configurationVersion++;
+        this.configurationChanged = true;
+
+        return true;
+    }
+
+    /**
+     * Returns true if the configuration changed since this was last called, no matter which lint
+     * noticed it, and forgets the change.
+     */
+    public synchronized boolean clearConfigurationChanged() {
+        boolean configurationChanged = this.configurationChanged;
+        this.configurationChanged = false;
+
+        return configurationChanged;
+    }
+
+    /**
+     * Returns the files the current configuration depends on: the configuration file itself and
+     * its custom rules directories.
+     */
+    public synchronized List<File> getConfigurationDependencies() {
+        if (this.configurationPath == null) {
+            return ImmutableList.of();
+        }
+
+        return ImmutableList.<File> builder()
+            .add(new File(this.configurationPath))
+            .addAll(this.rulesDirectories)
+            .build();
+    }
+
+    /**
+     * Returns the files which have been linted with the current configuration.
+     */
+    public synchronized Set<IFile> getLintedFiles() {
+        return ImmutableSet.copyOf(this.lintedFiles);
+    }
+
+    /**
+     * Sets the maximum number of files which are linted in a single bridge round-trip.
+     */
+    public void setBatchSize(int batchSize) {
+        checkArgument(batchSize > 0);
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Lints the given resources and updates their markers, reporting the progress to the monitor.
+     * The files which are left when the configuration changes halfway through are scheduled to be
+     * linted again with the new configuration.
+     *
+     * @throws OperationCanceledException if the monitor is cancelled, in which case the requests
+     *             which are still outstanding are aborted
+     */
+    public void lint(Collection<IResource> resources, String configurationPath, IProgressMonitor monitor)
+            throws IOException {
+        List<IFile> files = Lists.newArrayList();
+        for (IResource resource : resources) {
+            if (isLintable(resource) && resource.exists()) {
+                files.add((IFile) resource);
+            }
+        }
+
+        if (files.isEmpty()) {
+            return;
+        }
+
+        SubMonitor progress = SubMonitor.convert(monitor, "Linting", files.size());
+
+        int configurationVersion;
+        String configurationHash;
+        synchronized (this) {
+            this.updateConfiguration(configurationPath);
+            configurationVersion = this.configurationVersion;
+            configurationHash = this.configurationHash;
+        }
+
+        // replay the cached results of the files which haven't changed, unless the results also
+        // depend on the types of the files they import
+        LintCache lintCache = TSLintPlugin.getDefault().getLintCache();
+        Map<IFile, String> cacheKeys = Maps.newHashMap();
+        Map<IFile, List<RuleFailure>> cachedRuleFailures = Maps.newLinkedHashMap();
+        List<IFile> uncachedFiles = Lists.newArrayList();
+        for (IFile file : files) {
+            if (isTypeCheckEnabled(file)) {
+                uncachedFiles.add(file);
+                continue;
+            }
+
+            String cacheKey = lintCache.getKey(file.getRawLocation().toFile(), configurationHash);
+            List<RuleFailure> ruleFailures = lintCache.get(cacheKey);
+
+            if (ruleFailures != null) {
+                cachedRuleFailures.put(file, ruleFailures);
+            } else {
+                cacheKeys.put(file, cacheKey);
+                uncachedFiles.add(file);
+            }
+        }
+        if (!cachedRuleFailures.isEmpty()) {
+            MarkerWriter.write(cachedRuleFailures);
+            progress.worked(cachedRuleFailures.size());
+        }
+        synchronized (this) {
+            this.lintedFiles.addAll(files);
+        }
+
+        if (progress.isCanceled()) {
+            throw new OperationCanceledException();
+        }
+
+        // send all of the batches up front so that they are spread across the pool
+        List<List<IFile>> batches = Lists.partition(uncachedFiles, this.batchSize);
+        List<ListenableFuture<Map<IFile, List<RuleFailure>>>> futures = Lists.newArrayList();
+        for (List<IFile> batch : batches) {
+            futures.add(this.lintAsync(batch, configurationPath));
+        }
+
+        // update the markers one batch at a time as the results come back
+        int lintedFileCount = cachedRuleFailures.size();
+        try {
+            for (int i = 0; i < batches.size(); i++) {
+                List<IFile> batch = batches.get(i);
+                progress.subTask(String.format("%d of %d: %s", lintedFileCount + 1, files.size(), batch.get(0).getFullPath()));
+
+                Map<IFile, List<RuleFailure>> ruleFailuresByFile = getResult(futures.get(i), progress);
+
+                // the results are stale if the configuration changed in the meantime, so the files
+                // which are left have to be linted again with the new one
+                if (configurationVersion != this.getConfigurationVersion()) {
+                    List<IFile> unfinishedFiles = Lists.newArrayList();
+                    for (List<IFile> unfinishedBatch : batches.subList(i, batches.size())) {
+                        unfinishedFiles.addAll(unfinishedBatch);
+                    }
+
+                    TSLintPlugin.getDefault().getLintScheduler().schedule(
+                        batch.get(0).getProject(), unfinishedFiles, LintScheduler.Priority.BACKGROUND);
+                    return;
+                }
+
+                for (Map.Entry<IFile, List<RuleFailure>> entry : ruleFailuresByFile.entrySet()) {
+                    String cacheKey = cacheKeys.get(entry.getKey());
+
+                    if (cacheKey != null) {
+                        lintCache.put(cacheKey, entry.getValue());
+                    }
+                }
+
+                MarkerWriter.write(ruleFailuresByFile);
+
+                lintedFileCount += batch.size();
+                progress.worked(batch.size());
+            }
+        } finally {
+            // abort whatever is still outstanding if we stopped early
+            for (ListenableFuture<?> future : futures) {
+                future.cancel(false);
             }
+        }
+    }
+
+    /**
+     * Lints the given files in a single bridge round-trip.
+     *
+     * @return a future holding the rule failures of each file
+     */
+    public ListenableFuture<Map<IFile, List<RuleFailure>>> lintAsync(List<IFile> files, String configurationPath) throws IOException {
+        final Map<String, IFile> filesByPath = Maps.newLinkedHashMap();
+        Map<String, Long> modificationStamps = Maps.newHashMap();
+        for (IFile file : files) {
+            String path = file.getRawLocation().toOSString();
+
+            filesByPath.put(path, file);
+            modificationStamps.put(path, file.getModificationStamp());
+        }
+
+        // with type checking, the stamps tell the bridge which files of its programs are out of date
+        boolean typeCheck = isTypeCheckEnabled(files.get(0));
+        List<String> paths = ImmutableList.copyOf(filesByPath.keySet());
+        final long startTime = System.nanoTime();
+        ListenableFuture<Map<String, List<RuleFailure>>> response;
+        if (isProfilingEnabled(files.get(0))) {
+            Request request = new Request("lintBatchProfiled", paths, typeCheck, modificationStamps);
+            ListenableFuture<ProfiledResult> profiledResponse =
+                    this.getBridgePool(configurationPath).callAsync(request, PROFILED_RESULT_PARSER);
+
+            response = Futures.transform(profiledResponse, new Function<ProfiledResult, Map<String, List<RuleFailure>>>() {
+                @Override
+                public Map<String, List<RuleFailure>> apply(ProfiledResult result) {
+                    TSLintPlugin.getDefault().getRuleProfile().record(result);
+
+                    return result.getRuleFailures();
+                }
+            });
+        } else {
+            Request request = new Request("lintBatch", paths, typeCheck, modificationStamps);
+
+            response = this.getBridgePool(configurationPath).callAsync(request, RULE_FAILURE_PARSER);
+        }
 
-            Request request = new Request("lint", resourcePath);
-            String response = this.bridge.call(request, String.class);
+        return Futures.transform(response, new Function<Map<String, List<RuleFailure>>, Map<IFile, List<RuleFailure>>>() {
+            @Override
+            public Map<IFile, List<RuleFailure>> apply(Map<String, List<RuleFailure>> ruleFailuresByPath) {
+                recordMetrics(filesByPath.size(), startTime, ruleFailuresByPath);
 
-            if (response != null) {
-                ObjectMapper objectMapper = new ObjectMapper();
-                RuleFailure[] ruleFailures = objectMapper.readValue(response, RuleFailure[].class);
-                for (RuleFailure ruleFailure : ruleFailures) {
-                    addMarker(ruleFailure);
+                Map<IFile, List<RuleFailure>> ruleFailuresByFile = Maps.newLinkedHashMap();
+
+                for (Map.Entry<String, IFile> entry : filesByPath.entrySet()) {
+                    List<RuleFailure> ruleFailures = ruleFailuresByPath.get(entry.getKey());
+
+                    if (ruleFailures == null) {
+                        ruleFailures = ImmutableList.of();
+                    }
+
+                    ruleFailuresByFile.put(entry.getValue(), ruleFailures);
                 }
+
+                return ruleFailuresByFile;
             }
+        });
+    }
+
+    /**
+     * Lints the given contents of a file, such as the unsaved contents of an editor.
+     * <p>
+     * The bridge keeps the contents under the given version, which later edits can build on, see
+     * {@link #lintEditsAsync(IFile, long, long, List, String)}.
+     *
+     * @return a future holding the rule failures of the contents
+     */
+    public ListenableFuture<List<RuleFailure>> lintContentsAsync(IFile file, String contents, long version,
+            String configurationPath) throws IOException {
+        String path = file.getRawLocation().toOSString();
+        Request request = new Request("lintContents", path, contents, isTypeCheckEnabled(file), version);
+
+        return this.lintDocumentAsync(path, request, configurationPath);
+    }
+
+    /**
+     * Lints the contents of a file which the bridge already has at the base version, after applying
+     * the given edits to them. Only the edited ranges are parsed again.
+     *
+     * @return a future holding the rule failures of the edited contents, or null if the bridge
+     *         doesn't have the base version, in which case the full contents have to be sent
+     */
+    public ListenableFuture<List<RuleFailure>> lintEditsAsync(IFile file, long baseVersion, long version,
+            List<TextEdit> edits, String configurationPath) throws IOException {
+        String path = file.getRawLocation().toOSString();
+        Request request = new Request("lintEdits", path, baseVersion, version, edits, isTypeCheckEnabled(file));
+
+        return this.lintDocumentAsync(path, request, configurationPath);
+    }
+
+    private ListenableFuture<List<RuleFailure>> lintDocumentAsync(final String path, Request request,
+            String configurationPath) throws IOException {
+        final long startTime = System.nanoTime();
+
+        // the contents are kept by the bridge they were sent to, so stick to it
+        ListenableFuture<Map<String, List<RuleFailure>>> response =
+                this.getBridgePool(configurationPath).callAsync(path, request, RULE_FAILURE_PARSER);
+
+        return Futures.transform(response, new Function<Map<String, List<RuleFailure>>, List<RuleFailure>>() {
+            @Override
+            public List<RuleFailure> apply(Map<String, List<RuleFailure>> ruleFailuresByPath) {
+                // the bridge leaves the path out if it couldn't apply the edits
+                if (!ruleFailuresByPath.containsKey(path)) {
+                    return null;
+                }
+
+                recordMetrics(1, startTime, ruleFailuresByPath);
+
+                return ruleFailuresByPath.get(path);
+            }
+        });
+    }
+
+    /**
+     * Starts a node process with the configuration and has it load everything linting needs, so
+     * that the first lint doesn't have to wait for it.
+     */
+    public void warmUp(String configurationPath) throws IOException {
+        this.getBridgePool(configurationPath).warmUp();
+    }
+
+    /**
+     * Lets go of the node processes. The linter can't be used anymore afterwards.
+     */
+    public synchronized void dispose() {
+        this.disposed = true;
+
+        if (this.bridgePool != null) {
+            this.bridgeManager.release(this.bridgePool);
+            this.bridgePool = null;
         }
+
+        this.configurationPath = null;
+        this.rulesDirectories = ImmutableList.of();
+        this.configuration = null;
+        this.configurationHash = null;
+        this.configurationChanged = false;
+        this.lintedFiles.clear();
     }
 
-    private void addMarker(RuleFailure ruleViolation) {
-        try {
-            Path path = new Path(ruleViolation.getName());
-            IFile file = ResourcesPlugin.getWorkspace().getRoot().getFileForLocation(path);
-
-            RuleFailurePosition startPosition = ruleViolation.getStartPosition();
-            RuleFailurePosition endPosition = ruleViolation.getEndPosition();
-
-            Map<String, Object> attributes = Maps.newHashMap();
-            attributes.put(IMarker.LINE_NUMBER, startPosition.getLine() + 1);
-            attributes.put(IMarker.CHAR_START, startPosition.getPosition());
-            attributes.put(IMarker.CHAR_END, endPosition.getPosition());
-            attributes.put(IMarker.MESSAGE, ruleViolation.getFailure());
-            attributes.put(IMarker.PRIORITY, IMarker.PRIORITY_NORMAL);
-            attributes.put(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
-
-            MarkerUtilities.createMarker(file, attributes, MARKER_TYPE);
-        } catch (CoreException e) {
-            throw new RuntimeException(e);
+    public static boolean isLintable(IResource resource) {
+        String resourceName = resource.getName();
+
+        return resource instanceof IFile &&
+                (resourceName.endsWith(".ts") || resourceName.endsWith(".tsx")) &&
+                !resourceName.endsWith(".d.ts");
+    }
+
+    /**
+     * Returns true if files are linted against the program of their tsconfig.json, which type-checked
+     * rules require.
+     */
+    private static boolean isTypeCheckEnabled(IFile file) {
+        return Builder.getPreferences(file.getProject()).getBoolean("typeCheck", false);
+    }
+
+    /**
+     * Returns true if the time each rule takes on each file is recorded in the rule profile, see
+     * {@link TSLintPlugin#getRuleProfile()}.
+     */
+    private static boolean isProfilingEnabled(IFile file) {
+        return Builder.getPreferences(file.getProject()).getBoolean("profileRules", false);
+    }
+
+    private static void recordMetrics(int fileCount, long startTime, Map<String, List<RuleFailure>> ruleFailuresByPath) {
+        int ruleFailureCount = 0;
+        for (List<RuleFailure> ruleFailures : ruleFailuresByPath.values()) {
+            ruleFailureCount += ruleFailures.size();
         }
+
+        LintMetrics.getDefault().filesLinted(fileCount, System.nanoTime() - startTime, ruleFailureCount);
+    }
+
+    private synchronized BridgePool getBridgePool(String configurationPath) throws IOException {
+        this.updateConfiguration(configurationPath);
+
+        return this.bridgePool;
+    }
+
+    private synchronized int getConfigurationVersion() {
+        return this.configurationVersion;
     }
 
-    private void deleteMarkers(IFile file) {
+    /**
+     * Waits for the result of the future, checking the monitor for cancellation every now and then.
+     */
+    private static <T> T getResult(ListenableFuture<T> future, IProgressMonitor monitor) {
         try {
-            file.deleteMarkers(MARKER_TYPE, false, IResource.DEPTH_ZERO);
-        } catch (CoreException e) {
+            while (true) {
+                if (monitor.isCanceled()) {
+                    future.cancel(false);
+                    throw new OperationCanceledException();
+                }
+
+                try {
+                    return future.get(CANCELLATION_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // check the monitor again
+                }
+            }
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
         }
     }
 
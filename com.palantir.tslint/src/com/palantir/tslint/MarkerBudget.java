@@ -0,0 +1,348 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Sets;
+import com.palantir.tslint.failure.FailureStore;
+
+/**
+ * Limits the number of TSLint markers of each file and of each project, since every marker is
+ * persisted with the workspace and shown in the Problems view and the editors.
+ * <p>
+ * The markers of a file which goes over its share are picked by rule: first the rules listed in the
+ * rulePriority preference, then the rules with the fewest failures, so that a single noisy rule
+ * doesn't crowd out the rest. The failures which aren't shown are kept in memory, so that the
+ * markers of the file can be shown in full on demand, see {@link #showAll(IFile)}.
+ * <p>
+ * Files are given their share of the project's markers in the order they are linted, which puts
+ * the files open in editors first. The files which were cut short by the cap of their project are
+ * handed out by {@link #takeReleasedFiles()} once the project has fewer markers, so that they can be
+ * linted again and given the markers which were freed up.
+ */
+final class MarkerBudget {
+
+    public static final int DEFAULT_MAXIMUM_FILE_MARKERS = 500;
+    public static final int DEFAULT_MAXIMUM_PROJECT_MARKERS = 10000;
+
+    private static final Splitter RULE_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
+
+    // the number of markers of each file, counted from the existing markers when a project is first seen
+    private final Map<IProject, Map<IFile, Integer>> markerCounts;
+    private final Map<IProject, Integer> projectMarkerCounts;
+
+    // the failures of the files which have more of them than markers
+    private final Map<IFile, FailureStore> truncatedFailures;
+
+    // files which have been asked to show all of their markers
+    private final Set<IFile> unlimitedFiles;
+
+    // files which got fewer markers than their own cap allows because their project ran out of them
+    private final Set<IFile> projectCappedFiles;
+
+    // project capped files whose project has had markers freed up since
+    private final Set<IFile> releasedFiles;
+
+    public MarkerBudget() {
+        this.markerCounts = Maps.newHashMap();
+        this.projectMarkerCounts = Maps.newHashMap();
+        this.truncatedFailures = Maps.newHashMap();
+        this.unlimitedFiles = Sets.newHashSet();
+        this.projectCappedFiles = Sets.newHashSet();
+        this.releasedFiles = Sets.newHashSet();
+    }
+
+    /**
+     * Picks the failures of a file which get a marker, and takes them out of the budget of its
+     * project.
+     *
+     * @return the indexes of the failures which get a marker, in ascending order
+     */
+    public synchronized int[] allot(IFile file, FailureStore failures) throws CoreException {
+        checkNotNull(file);
+        checkNotNull(failures);
+
+        IProject project = file.getProject();
+        Map<IFile, Integer> fileMarkerCounts = this.getMarkerCounts(project);
+        Integer previousCount = fileMarkerCounts.get(file);
+        int projectMarkerCount = this.projectMarkerCounts.get(project);
+        int otherMarkerCount = projectMarkerCount - (previousCount != null ? previousCount : 0);
+
+        int maximumCount = failures.size();
+        boolean projectCapped = false;
+        if (!this.unlimitedFiles.contains(file)) {
+            IEclipsePreferences prefs = Builder.getPreferences(project);
+            int maximumFileMarkers = prefs.getInt("maxMarkersPerFile", DEFAULT_MAXIMUM_FILE_MARKERS);
+            int maximumProjectMarkers = prefs.getInt("maxMarkersPerProject", DEFAULT_MAXIMUM_PROJECT_MARKERS);
+
+            // a cap of zero or less turns it off
+            if (maximumFileMarkers > 0) {
+                maximumCount = Math.min(maximumCount, maximumFileMarkers);
+            }
+            if (maximumProjectMarkers > 0) {
+                int remainingCount = Math.max(0, maximumProjectMarkers - otherMarkerCount);
+
+                projectCapped = remainingCount < maximumCount;
+                maximumCount = Math.min(maximumCount, remainingCount);
+            }
+        }
+
+        int[] indexes;
+        if (maximumCount == failures.size()) {
+            this.truncatedFailures.remove(file);
+
+            indexes = new int[failures.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+        } else {
+            this.truncatedFailures.put(file, failures);
+
+            indexes = this.pick(failures, maximumCount, getRulePriority(project));
+        }
+
+        fileMarkerCounts.put(file, indexes.length);
+        this.projectMarkerCounts.put(project, otherMarkerCount + indexes.length);
+
+        if (projectCapped) {
+            this.projectCappedFiles.add(file);
+        } else {
+            this.projectCappedFiles.remove(file);
+        }
+        this.releasedFiles.remove(file);
+
+        if (otherMarkerCount + indexes.length < projectMarkerCount) {
+            this.release(project);
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Returns true if the file got fewer markers than its own cap allows when it was last allotted
+     * its markers, because its project had run out of them.
+     */
+    public synchronized boolean isProjectCapped(IFile file) {
+        checkNotNull(file);
+
+        return this.projectCappedFiles.contains(file);
+    }
+
+    /**
+     * Returns the files which were cut short by the cap of their project and may get more markers
+     * now that their project has fewer of them, and forgets them until more markers are freed up.
+     */
+    public synchronized Set<IFile> takeReleasedFiles() {
+        Set<IFile> files = ImmutableSet.copyOf(this.releasedFiles);
+        this.releasedFiles.clear();
+
+        return files;
+    }
+
+    /**
+     * Lifts the caps off a file from now on.
+     *
+     * @return all of the failures of the file if some of them have no marker, or null otherwise
+     */
+    public synchronized FailureStore showAll(IFile file) {
+        checkNotNull(file);
+
+        this.unlimitedFiles.add(file);
+
+        return this.truncatedFailures.get(file);
+    }
+
+    /**
+     * Forgets a file whose markers are gone, for example because it was deleted.
+     */
+    public synchronized void remove(IFile file) {
+        checkNotNull(file);
+
+        Map<IFile, Integer> fileMarkerCounts = this.markerCounts.get(file.getProject());
+        Integer count = null;
+        if (fileMarkerCounts != null) {
+            count = fileMarkerCounts.remove(file);
+
+            if (count != null) {
+                IProject project = file.getProject();
+                this.projectMarkerCounts.put(project, this.projectMarkerCounts.get(project) - count);
+            }
+        }
+
+        this.truncatedFailures.remove(file);
+        this.unlimitedFiles.remove(file);
+        this.projectCappedFiles.remove(file);
+        this.releasedFiles.remove(file);
+
+        if (count != null && count > 0) {
+            this.release(file.getProject());
+        }
+    }
+
+    /**
+     * Forgets every file of a project, for example because its markers were removed by a clean.
+     */
+    public synchronized void remove(IProject project) {
+        checkNotNull(project);
+
+        this.markerCounts.remove(project);
+        this.projectMarkerCounts.remove(project);
+
+        removeFiles(this.truncatedFailures.keySet(), project);
+        removeFiles(this.unlimitedFiles, project);
+        removeFiles(this.projectCappedFiles, project);
+        removeFiles(this.releasedFiles, project);
+    }
+
+    private void release(IProject project) {
+        for (IFile file : this.projectCappedFiles) {
+            if (file.getProject().equals(project)) {
+                this.releasedFiles.add(file);
+            }
+        }
+    }
+
+    private Map<IFile, Integer> getMarkerCounts(IProject project) throws CoreException {
+        Map<IFile, Integer> fileMarkerCounts = this.markerCounts.get(project);
+
+        if (fileMarkerCounts == null) {
+            // the markers are persistent, so the project may have plenty of them from a previous session
+            Multiset<IResource> counts = HashMultiset.create();
+            for (IMarker marker : project.findMarkers(Linter.MARKER_TYPE, false, IResource.DEPTH_INFINITE)) {
+                counts.add(marker.getResource());
+            }
+
+            fileMarkerCounts = Maps.newHashMap();
+            for (Multiset.Entry<IResource> entry : counts.entrySet()) {
+                if (entry.getElement() instanceof IFile) {
+                    fileMarkerCounts.put((IFile) entry.getElement(), entry.getCount());
+                }
+            }
+
+            this.markerCounts.put(project, fileMarkerCounts);
+            this.projectMarkerCounts.put(project, counts.size());
+        }
+
+        return fileMarkerCounts;
+    }
+
+    private int[] pick(FailureStore failures, int count, List<String> rulePriority) {
+        final Multiset<String> ruleCounts = HashMultiset.create();
+        for (int i = 0; i < failures.size(); i++) {
+            ruleCounts.add(failures.getRuleName(i));
+        }
+
+        final Map<String, Integer> priorities = Maps.newHashMap();
+        for (int i = 0; i < rulePriority.size(); i++) {
+            if (!priorities.containsKey(rulePriority.get(i))) {
+                priorities.put(rulePriority.get(i), i);
+            }
+        }
+
+        // only the rules are sorted, there are far fewer of them than failures
+        List<String> ruleNames = Lists.newArrayList(ruleCounts.elementSet());
+        Collections.sort(ruleNames, new Comparator<String>() {
+            @Override
+            public int compare(String leftRule, String rightRule) {
+                Integer leftPriority = priorities.get(leftRule);
+                Integer rightPriority = priorities.get(rightRule);
+
+                if (leftPriority != null || rightPriority != null) {
+                    if (leftPriority == null) {
+                        return 1;
+                    } else if (rightPriority == null) {
+                        return -1;
+                    } else if (!leftPriority.equals(rightPriority)) {
+                        return leftPriority.compareTo(rightPriority);
+                    }
+                }
+
+                int countComparison = ruleCounts.count(leftRule) - ruleCounts.count(rightRule);
+                if (countComparison != 0) {
+                    return countComparison;
+                }
+
+                return String.valueOf(leftRule).compareTo(String.valueOf(rightRule));
+            }
+        });
+
+        Map<String, Integer> ranks = Maps.newHashMapWithExpectedSize(ruleNames.size());
+        for (int rank = 0; rank < ruleNames.size(); rank++) {
+            ranks.put(ruleNames.get(rank), rank);
+        }
+
+        // the rules before the last one which is picked get all of their failures picked
+        int lastRank = -1;
+        int lastRankCount = 0;
+        for (int rank = 0, remainingCount = count; rank < ruleNames.size() && remainingCount > 0; rank++) {
+            lastRank = rank;
+            lastRankCount = Math.min(ruleCounts.count(ruleNames.get(rank)), remainingCount);
+            remainingCount -= lastRankCount;
+        }
+
+        // the failures of a rule are taken in the order they were reported, so the indexes come out sorted
+        int[] pickedIndexes = new int[count];
+        int pickedCount = 0;
+        for (int i = 0; i < failures.size() && pickedCount < count; i++) {
+            int rank = ranks.get(failures.getRuleName(i));
+
+            if (rank < lastRank) {
+                pickedIndexes[pickedCount++] = i;
+            } else if (rank == lastRank && lastRankCount > 0) {
+                pickedIndexes[pickedCount++] = i;
+                lastRankCount--;
+            }
+        }
+
+        return pickedIndexes;
+    }
+
+    private static void removeFiles(Set<IFile> files, IProject project) {
+        for (Iterator<IFile> it = files.iterator(); it.hasNext();) {
+            if (it.next().getProject().equals(project)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static List<String> getRulePriority(IProject project) {
+        String rulePriority = Builder.getPreferences(project).get("rulePriority", "");
+
+        return Lists.newArrayList(RULE_SPLITTER.split(rulePriority));
+    }
+}
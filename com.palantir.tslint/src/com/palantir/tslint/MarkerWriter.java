@@ -0,0 +1,328 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.collect.Multisets;
+import com.palantir.tslint.failure.FailureStore;
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * Brings the TSLint markers of a batch of files in line with their latest rule failures.
+ * <p>
+ * Existing markers are matched against the rule failures by rule, range and message so that only
+ * the markers which actually changed are deleted or created. All of the changes for a batch are
+ * made in a single workspace operation, so they result in a single resource change notification.
+ * <p>
+ * The rule failures are read through a {@link FailureStore}, so that large numbers of them can be
+ * matched against the markers without creating an object per failure.
+ * <p>
+ * Only the failures which fit in the {@link MarkerBudget} get a marker. The rest are counted by a
+ * single summary marker on the file. The files which were cut short by the cap of their project are
+ * linted again once the project has markers to spare.
+ */
+final class MarkerWriter {
+
+    public static final String SUMMARY_MARKER_TYPE = "com.palantir.tslint.tslintSummary";
+
+    public static final String RULE_NAME = "ruleName";
+    public static final String HIDDEN_COUNT = "hiddenCount";
+
+    private static final String[] ATTRIBUTE_NAMES = {
+            RULE_NAME,
+            IMarker.CHAR_START,
+            IMarker.CHAR_END,
+            IMarker.MESSAGE,
+            IMarker.LINE_NUMBER,
+            IMarker.PRIORITY,
+            IMarker.SEVERITY
+    };
+
+    private static final Integer PRIORITY_NORMAL = IMarker.PRIORITY_NORMAL;
+    private static final Integer SEVERITY_WARNING = IMarker.SEVERITY_WARNING;
+
+    // stands in for an attribute which a marker doesn't have
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    private static final String[] SUMMARY_ATTRIBUTE_NAMES = {
+            HIDDEN_COUNT,
+            IMarker.MESSAGE,
+            IMarker.LINE_NUMBER,
+            IMarker.PRIORITY,
+            IMarker.SEVERITY
+    };
+
+    private static final String[] KEY_ATTRIBUTE_NAMES = {
+            RULE_NAME,
+            IMarker.CHAR_START,
+            IMarker.CHAR_END,
+            IMarker.MESSAGE,
+            IMarker.LINE_NUMBER
+    };
+
+    private MarkerWriter() {
+        // prevent instantiation
+    }
+
+    public static void write(final Map<IFile, List<RuleFailure>> ruleFailuresByFile) {
+        checkNotNull(ruleFailuresByFile);
+
+        final MarkerBudget markerBudget = TSLintPlugin.getDefault().getMarkerBudget();
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        IWorkspaceRunnable runnable = new IWorkspaceRunnable() {
+            @Override
+            public void run(IProgressMonitor monitor) throws CoreException {
+                for (Map.Entry<IFile, List<RuleFailure>> entry : ruleFailuresByFile.entrySet()) {
+                    updateMarkers(entry.getKey(), entry.getValue(), markerBudget);
+                }
+            }
+        };
+
+        try {
+            workspace.run(runnable, null, IWorkspace.AVOID_UPDATE, null);
+        } catch (CoreException e) {
+            throw new RuntimeException(e);
+        }
+
+        scheduleReleasedFiles();
+    }
+
+    /**
+     * Schedules the files which were cut short by the cap of their project to be linted again, if
+     * their project has had markers freed up since.
+     */
+    public static void scheduleReleasedFiles() {
+        Map<IProject, List<IFile>> filesByProject = Maps.newHashMap();
+        for (IFile file : TSLintPlugin.getDefault().getMarkerBudget().takeReleasedFiles()) {
+            List<IFile> files = filesByProject.get(file.getProject());
+            if (files == null) {
+                files = Lists.newArrayList();
+                filesByProject.put(file.getProject(), files);
+            }
+            files.add(file);
+        }
+
+        LintScheduler lintScheduler = TSLintPlugin.getDefault().getLintScheduler();
+        for (Map.Entry<IProject, List<IFile>> entry : filesByProject.entrySet()) {
+            lintScheduler.schedule(entry.getKey(), entry.getValue(), LintScheduler.Priority.BACKGROUND);
+        }
+    }
+
+    private static void updateMarkers(IFile file, List<RuleFailure> ruleFailures, MarkerBudget markerBudget)
+            throws CoreException {
+        if (!file.exists()) {
+            markerBudget.remove(file);
+            return;
+        }
+
+        // read the failures through the store so that they're never turned into objects
+        FailureStore failures = FailureStore.copyOf(ruleFailures);
+        int[] shownFailures = markerBudget.allot(file, failures);
+
+        // index the existing markers by the attributes that identify them
+        Map<MarkerKey, List<IMarker>> existingMarkers = Maps.newHashMap();
+        for (IMarker marker : file.findMarkers(Linter.MARKER_TYPE, false, IResource.DEPTH_ZERO)) {
+            Object[] values = marker.getAttributes(KEY_ATTRIBUTE_NAMES);
+            MarkerKey key = new MarkerKey();
+            key.set((String) values[0], toInt(values[1]), toInt(values[2]), (String) values[3], toInt(values[4]));
+
+            List<IMarker> markers = existingMarkers.get(key);
+            if (markers == null) {
+                markers = Lists.newArrayListWithCapacity(1);
+                existingMarkers.put(key, markers);
+            }
+            markers.add(marker);
+        }
+
+        // keep the markers which still match a rule failure and create the missing ones
+        MarkerKey probe = new MarkerKey();
+        int[] newFailures = new int[shownFailures.length];
+        int newFailureCount = 0;
+        for (int n = 0; n < shownFailures.length; n++) {
+            int i = shownFailures[n];
+            probe.set(
+                failures.getRuleName(i),
+                failures.getStartPosition(i),
+                failures.getEndPosition(i),
+                failures.getFailure(i),
+                failures.getStartLine(i) + 1);
+            List<IMarker> markers = existingMarkers.get(probe);
+
+            if (markers == null || markers.isEmpty()) {
+                newFailures[newFailureCount++] = i;
+            } else {
+                markers.remove(markers.size() - 1);
+            }
+        }
+
+        // whatever is left over no longer has a rule failure
+        List<IMarker> staleMarkers = Lists.newArrayList();
+        for (List<IMarker> markers : existingMarkers.values()) {
+            staleMarkers.addAll(markers);
+        }
+        if (!staleMarkers.isEmpty()) {
+            file.getWorkspace().deleteMarkers(staleMarkers.toArray(new IMarker[staleMarkers.size()]));
+        }
+
+        for (int n = 0; n < newFailureCount; n++) {
+            int i = newFailures[n];
+            IMarker marker = file.createMarker(Linter.MARKER_TYPE);
+
+            // markers keep their attributes as objects, so only the constant ones can be shared
+            marker.setAttributes(ATTRIBUTE_NAMES, new Object[] {
+                    failures.getRuleName(i),
+                    failures.getStartPosition(i),
+                    failures.getEndPosition(i),
+                    failures.getFailure(i),
+                    failures.getStartLine(i) + 1,
+                    PRIORITY_NORMAL,
+                    SEVERITY_WARNING
+            });
+        }
+
+        updateSummaryMarker(file, failures, shownFailures, markerBudget.isProjectCapped(file));
+    }
+
+    private static void updateSummaryMarker(IFile file, FailureStore failures, int[] shownFailures, boolean projectCapped)
+            throws CoreException {
+        int hiddenCount = failures.size() - shownFailures.length;
+        String message = null;
+        if (hiddenCount > 0) {
+            Multiset<String> hiddenRuleNames = HashMultiset.create();
+            int n = 0;
+            for (int i = 0; i < failures.size(); i++) {
+                if (n < shownFailures.length && shownFailures[n] == i) {
+                    n++;
+                } else {
+                    hiddenRuleNames.add(String.valueOf(failures.getRuleName(i)));
+                }
+            }
+
+            message = getSummaryMessage(hiddenCount, hiddenRuleNames, projectCapped);
+        }
+
+        // leave the summary alone if it didn't change, so that the file isn't touched for nothing
+        IMarker[] summaryMarkers = file.findMarkers(SUMMARY_MARKER_TYPE, false, IResource.DEPTH_ZERO);
+        if (summaryMarkers.length == 1 && message != null
+                && message.equals(summaryMarkers[0].getAttribute(IMarker.MESSAGE, null))) {
+            return;
+        }
+
+        if (summaryMarkers.length > 0) {
+            file.getWorkspace().deleteMarkers(summaryMarkers);
+        }
+
+        if (message != null) {
+            IMarker marker = file.createMarker(SUMMARY_MARKER_TYPE);
+            marker.setAttributes(SUMMARY_ATTRIBUTE_NAMES, new Object[] {
+                    hiddenCount,
+                    message,
+                    1,
+                    PRIORITY_NORMAL,
+                    SEVERITY_WARNING
+            });
+        }
+    }
+
+    private static String getSummaryMessage(int hiddenCount, Multiset<String> hiddenRuleNames, boolean projectCapped) {
+        List<String> ruleCounts = Lists.newArrayList();
+        for (Multiset.Entry<String> entry : Multisets.copyHighestCountFirst(hiddenRuleNames).entrySet()) {
+            ruleCounts.add(entry.getElement() + " (" + entry.getCount() + ")");
+        }
+
+        if (projectCapped) {
+            return String.format("%d more TSLint problems are not shown because the project has too many TSLint problems: %s. "
+                    + "They are shown once other files of the project have fewer, or use Show All TSLint Problems on the file to see them.",
+                hiddenCount, Joiner.on(", ").join(ruleCounts));
+        }
+
+        return String.format("%d more TSLint problems are not shown: %s. Use Show All TSLint Problems on the file to see them.",
+            hiddenCount, Joiner.on(", ").join(ruleCounts));
+    }
+
+    private static int toInt(Object value) {
+        return value instanceof Integer ? (Integer) value : MISSING;
+    }
+
+    /**
+     * The attributes which identify a marker. A single instance is reused to look up the markers
+     * of each rule failure, which is why it's mutable.
+     */
+    private static final class MarkerKey {
+
+        // markers created before rule names were recorded have no rule name attribute
+        private String ruleName;
+        private int charStart;
+        private int charEnd;
+        private String message;
+        private int lineNumber;
+
+        public void set(String ruleName, int charStart, int charEnd, String message, int lineNumber) {
+            this.ruleName = ruleName;
+            this.charStart = charStart;
+            this.charEnd = charEnd;
+            this.message = message;
+            this.lineNumber = lineNumber;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof MarkerKey)) {
+                return false;
+            }
+
+            MarkerKey other = (MarkerKey) obj;
+
+            return this.charStart == other.charStart
+                    && this.charEnd == other.charEnd
+                    && this.lineNumber == other.lineNumber
+                    && Objects.equal(this.ruleName, other.ruleName)
+                    && Objects.equal(this.message, other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = this.ruleName != null ? this.ruleName.hashCode() : 0;
+            hashCode = 31 * hashCode + this.charStart;
+            hashCode = 31 * hashCode + this.charEnd;
+            hashCode = 31 * hashCode + (this.message != null ? this.message.hashCode() : 0);
+            hashCode = 31 * hashCode + this.lineNumber;
+
+            return hashCode;
+        }
+    }
+}
@@ -60,9 +60,12 @@ public final class ProjectNature implements IProjectNature {
                     commands.length - i - 1);
                 description.setBuildSpec(newCommands);
                 this.project.setDescription(description, null);
-                return;
+                break;
             }
         }
+
+        // the project isn't linted anymore, so its node processes can go
+        TSLintPlugin.getDefault().removeLinter(this.project);
     }
 
     @Override
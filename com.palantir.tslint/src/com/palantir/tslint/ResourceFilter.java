@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IPath;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Decides which resources of a project are left out of linting.
+ * <p>
+ * Dependency folders, derived resources and team private resources are always excluded, as are
+ * the resources matching the {@code linterOptions.exclude} globs of the configuration or the
+ * {@code exclude} globs of the project's preferences. Excluded folders are pruned as a whole, so
+ * their contents are never visited.
+ */
+final class ResourceFilter {
+
+    private static final Set<String> EXCLUDED_FOLDER_NAMES = ImmutableSet.of("node_modules", "bower_components");
+    private static final Splitter GLOB_SPLITTER = Splitter.on(',').omitEmptyStrings().trimResults();
+
+    private final GlobMatcher globMatcher;
+
+    public ResourceFilter(IProject project, String configurationPath) {
+        checkNotNull(project);
+        checkNotNull(configurationPath);
+
+        List<String> globs = Lists.newArrayList();
+
+        File configurationFile = new File(configurationPath);
+        if (configurationFile.exists()) {
+            try {
+                globs.addAll(Configuration.read(configurationFile).getExcludes());
+            } catch (IOException e) {
+                // TSLint reports unreadable configurations itself
+            }
+        }
+
+        // the project's globs are relative to the project
+        IPath projectLocation = project.getLocation();
+        String excludes = Builder.getPreferences(project).get("exclude", "");
+        if (projectLocation != null) {
+            for (String glob : GLOB_SPLITTER.split(excludes)) {
+                globs.add(GlobMatcher.resolve(projectLocation.toString(), glob));
+            }
+        }
+
+        this.globMatcher = new GlobMatcher(globs);
+    }
+
+    /**
+     * Returns true if the resource, and everything below it, should not be linted.
+     */
+    public boolean isExcluded(IResource resource) {
+        checkNotNull(resource);
+
+        if (resource.getType() == IResource.FOLDER && EXCLUDED_FOLDER_NAMES.contains(resource.getName())) {
+            return true;
+        }
+
+        if (resource.isDerived() || resource.isTeamPrivateMember()) {
+            return true;
+        }
+
+        IPath location = resource.getLocation();
+
+        return location != null && this.globMatcher.matches(location.toString());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.commands.AbstractHandler;
+import org.eclipse.core.commands.ExecutionEvent;
+import org.eclipse.core.commands.ExecutionException;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IAdaptable;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.ui.handlers.HandlerUtil;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.palantir.tslint.failure.FailureStore;
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * Creates the markers which the {@link MarkerBudget} left out for the selected files, and keeps
+ * showing all of their markers from then on. Files whose failures are no longer in memory, because
+ * they were capped in a previous session, are linted again.
+ */
+public final class ShowAllMarkersHandler extends AbstractHandler {
+
+    @Override
+    public Object execute(ExecutionEvent event) throws ExecutionException {
+        MarkerBudget markerBudget = TSLintPlugin.getDefault().getMarkerBudget();
+        final Map<IFile, List<RuleFailure>> ruleFailuresByFile = Maps.newLinkedHashMap();
+
+        ISelection selection = HandlerUtil.getCurrentSelection(event);
+        if (selection instanceof IStructuredSelection) {
+            for (Iterator<?> it = ((IStructuredSelection) selection).iterator(); it.hasNext();) {
+                IFile file = getFile(it.next());
+
+                if (file != null) {
+                    FailureStore failures = markerBudget.showAll(file);
+
+                    if (failures != null) {
+                        ruleFailuresByFile.put(file, failures);
+                    } else if (hasSummaryMarker(file)) {
+                        // the failures were capped in a previous session, so they have to be linted again
+                        TSLintPlugin.getDefault().getLintScheduler().schedule(
+                            file.getProject(), ImmutableList.of(file), LintScheduler.Priority.RECENTLY_EDITED);
+                    }
+                }
+            }
+        }
+
+        // creating thousands of markers takes a while, and may have to wait for a build
+        if (!ruleFailuresByFile.isEmpty()) {
+            Job job = new Job("Showing all TSLint problems") {
+                @Override
+                protected IStatus run(IProgressMonitor monitor) {
+                    MarkerWriter.write(ruleFailuresByFile);
+
+                    return Status.OK_STATUS;
+                }
+            };
+            job.setRule(ResourcesPlugin.getWorkspace().getRoot());
+            job.schedule();
+        }
+
+        return null;
+    }
+
+    private static boolean hasSummaryMarker(IFile file) throws ExecutionException {
+        try {
+            return file.exists() && file.findMarkers(MarkerWriter.SUMMARY_MARKER_TYPE, false, IResource.DEPTH_ZERO).length > 0;
+        } catch (CoreException e) {
+            throw new ExecutionException("Failed to find the TSLint markers of " + file.getFullPath(), e);
+        }
+    }
+
+    /**
+     * Returns the file of a selected element, which may also be a marker of the file, such as its
+     * summary marker in the Problems view.
+     */
+    private static IFile getFile(Object element) {
+        if (element instanceof IFile) {
+            return (IFile) element;
+        }
+
+        IMarker marker = null;
+        if (element instanceof IMarker) {
+            marker = (IMarker) element;
+        } else if (element instanceof IAdaptable) {
+            marker = (IMarker) ((IAdaptable) element).getAdapter(IMarker.class);
+        }
+        if (marker != null) {
+            return marker.getResource() instanceof IFile ? (IFile) marker.getResource() : null;
+        }
+
+        if (element instanceof IAdaptable) {
+            return (IFile) ((IAdaptable) element).getAdapter(IFile.class);
+        }
+
+        return null;
+    }
+}
@@ -17,11 +17,47 @@
 package com.palantir.tslint;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.ui.plugin.AbstractUIPlugin;
 import org.osgi.framework.BundleContext;
+import org.osgi.service.prefs.BackingStoreException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.palantir.tslint.profile.RuleProfile;
+import com.palantir.tslint.services.Bridge;
+import com.palantir.tslint.services.BridgeLog;
+import com.palantir.tslint.services.BridgeManager;
+import com.palantir.tslint.services.LintMetrics;
+import com.palantir.tslint.services.NodeRuntime;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -32,19 +68,226 @@ public final class TSLintPlugin extends AbstractUIPlugin {
     private static TSLintPlugin plugin;
     public static final String ID = "com.palantir.tslint";
 
+    private static final String METRICS_NAME = "com.palantir.tslint:type=LintMetrics";
+
+    // bursts of output from the node processes are collected into a single entry of the error log
+    private static final long BRIDGE_LOG_DELAY_MILLIS = 1000;
+
+    private final Map<IProject, Linter> linters = Maps.newHashMap();
+    private final RuleProfile ruleProfile = new RuleProfile();
+    private final MarkerBudget markerBudget = new MarkerBudget();
+
+    private BridgeManager bridgeManager;
+    private LintScheduler lintScheduler;
+    private LintCache lintCache;
+    private Job metricsLogJob;
+    private Job warmUpJob;
+    private BridgeLogJob bridgeLogJob;
+    private IResourceChangeListener projectListener;
+
     @Override
     public void start(BundleContext context) throws Exception {
         super.start(context);
         plugin = this;
 
+        // the node processes are shared by all projects, so their settings are workspace-wide
+        IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(ID);
+        long defaultIdleTimeout = TimeUnit.MILLISECONDS.toSeconds(Bridge.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        long idleTimeout = prefs.getLong("bridgeIdleTimeout", defaultIdleTimeout);
+
+        this.bridgeLogJob = new BridgeLogJob();
+        BridgeLog.getDefault().addListener(this.bridgeLogJob);
+
+        // the node processes of a project which goes away aren't needed anymore
+        this.projectListener = new ProjectListener();
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(
+            this.projectListener, IResourceChangeEvent.PRE_CLOSE | IResourceChangeEvent.PRE_DELETE);
+
+        synchronized (this) {
+            int bridgeCount = Runtime.getRuntime().availableProcessors();
+
+            this.bridgeManager = new BridgeManager(
+                getBridgeFile(),
+                bridgeCount,
+                TimeUnit.SECONDS.toMillis(Math.max(0, idleTimeout)));
+
+            // one job per node process keeps them all busy
+            this.lintScheduler = new LintScheduler(bridgeCount);
+        }
+
+        // find node and start the node processes of the open projects before the first build needs them
+        NodeRuntime.getDefault().setCompileCacheDirectory(this.getStateLocation().append("nodeCompileCache").toFile());
+        this.warmUpJob = new WarmUpJob();
+        this.warmUpJob.schedule();
+
+        // the metrics can be watched with JConsole, or dumped to the log every so often
+        this.registerMetrics();
+        long metricsLogInterval = prefs.getLong("metricsLogInterval", 0);
+        if (metricsLogInterval > 0) {
+            this.metricsLogJob = new MetricsLogJob(TimeUnit.SECONDS.toMillis(metricsLogInterval));
+            this.metricsLogJob.schedule(TimeUnit.SECONDS.toMillis(metricsLogInterval));
+        }
     }
 
     @Override
     public void stop(BundleContext context) throws Exception {
+        // a project which is being warmed up would otherwise start a node process nobody stops
+        if (this.warmUpJob != null) {
+            this.warmUpJob.cancel();
+            this.warmUpJob.join();
+            this.warmUpJob = null;
+        }
+
+        if (this.metricsLogJob != null) {
+            this.metricsLogJob.cancel();
+            this.metricsLogJob = null;
+        }
+        this.unregisterMetrics();
+
+        ResourcesPlugin.getWorkspace().removeResourceChangeListener(this.projectListener);
+        this.projectListener = null;
+
+        synchronized (this) {
+            this.lintScheduler.dispose();
+
+            for (Linter linter : this.linters.values()) {
+                linter.dispose();
+            }
+            this.linters.clear();
+            this.bridgeManager.dispose();
+
+            if (this.lintCache != null) {
+                this.lintCache.save();
+            }
+        }
+
+        BridgeLog.getDefault().removeListener(this.bridgeLogJob);
+        this.bridgeLogJob.cancel();
+        this.bridgeLogJob = null;
+
         plugin = null;
         super.stop(context);
     }
 
+    /**
+     * Returns the linter of a project, which is shared by its builder and its editors.
+     */
+    synchronized Linter getLinter(IProject project) {
+        Linter linter = this.linters.get(project);
+
+        if (linter == null) {
+            linter = new Linter(this.bridgeManager);
+            this.linters.put(project, linter);
+        }
+
+        return linter;
+    }
+
+    /**
+     * Disposes the linter of a project which is no longer linted, for example because it was
+     * closed, so that it lets go of its node processes.
+     */
+    synchronized void removeLinter(IProject project) {
+        Linter linter = this.linters.remove(project);
+
+        if (linter != null) {
+            linter.dispose();
+        }
+    }
+
+    /**
+     * Returns the scheduler which lints the files of all projects in the background.
+     */
+    synchronized LintScheduler getLintScheduler() {
+        return this.lintScheduler;
+    }
+
+    /**
+     * Returns the cache of lint results shared by all projects.
+     */
+    synchronized LintCache getLintCache() throws IOException {
+        if (this.lintCache == null) {
+            File cacheFile = this.getStateLocation().append("lintCache.json").toFile();
+
+            this.lintCache = new LintCache(cacheFile, getTslintVersion());
+        }
+
+        return this.lintCache;
+    }
+
+    /**
+     * Returns the budget which limits the number of markers of each file and project.
+     */
+    MarkerBudget getMarkerBudget() {
+        return this.markerBudget;
+    }
+
+    private void registerMetrics() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(METRICS_NAME);
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(LintMetrics.getDefault(), name);
+            }
+        } catch (JMException e) {
+            this.getLog().log(new Status(IStatus.WARNING, ID, "Could not register the TSLint metrics", e));
+        }
+    }
+
+    private void unregisterMetrics() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(METRICS_NAME);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            this.getLog().log(new Status(IStatus.WARNING, ID, "Could not unregister the TSLint metrics", e));
+        }
+    }
+
+    /**
+     * Returns the time each rule took on the files of the projects which have rule profiling
+     * enabled, since the configuration of one of them last changed.
+     */
+    RuleProfile getRuleProfile() {
+        return this.ruleProfile;
+    }
+
+    /**
+     * Writes the rule profile to ruleProfile.csv and ruleProfile.json in the plug-in's state
+     * location, unless nothing has been profiled.
+     */
+    void writeRuleProfile() throws IOException {
+        if (this.ruleProfile.isEmpty()) {
+            return;
+        }
+
+        File stateDirectory = this.getStateLocation().toFile();
+
+        Writer csvWriter = new OutputStreamWriter(new FileOutputStream(new File(stateDirectory, "ruleProfile.csv")), Charsets.UTF_8);
+        try {
+            this.ruleProfile.writeCsv(csvWriter);
+        } finally {
+            csvWriter.close();
+        }
+
+        Writer jsonWriter = new OutputStreamWriter(new FileOutputStream(new File(stateDirectory, "ruleProfile.json")), Charsets.UTF_8);
+        try {
+            this.ruleProfile.writeJson(jsonWriter);
+        } finally {
+            jsonWriter.close();
+        }
+    }
+
+    public static File getBridgeFile() throws IOException {
+        File bundleFile = FileLocator.getBundleFile(TSLintPlugin.getDefault().getBundle());
+
+        return new File(bundleFile, "bin/bridge.js");
+    }
+
     public static String getLinterPath() throws IOException {
         File bundleFile = FileLocator.getBundleFile(TSLintPlugin.getDefault().getBundle());
         File tslintFile = new File(bundleFile, "node_modules/tslint/bin/tslint-cli.js");
@@ -52,8 +295,216 @@ public final class TSLintPlugin extends AbstractUIPlugin {
         return tslintFile.getAbsolutePath();
     }
 
+    public static String getTslintVersion() throws IOException {
+        File bundleFile = FileLocator.getBundleFile(TSLintPlugin.getDefault().getBundle());
+        File packageFile = new File(bundleFile, "node_modules/tslint/package.json");
+        JsonNode packageJson = new ObjectMapper().readTree(packageFile);
+
+        return packageJson.path("version").asText();
+    }
+
     public static TSLintPlugin getDefault() {
         return plugin;
     }
 
+    /**
+     * Finds node and warms up a node process for each configuration used by the open projects,
+     * so that the first build after opening the workspace doesn't pay for starting them.
+     * <p>
+     * The node installation is kept in the workspace preferences, so that node only has to be
+     * searched for again when the PATH or the executable changes.
+     */
+    private final class WarmUpJob extends Job {
+
+        public WarmUpJob() {
+            super("Starting TSLint");
+
+            this.setSystem(true);
+            this.setPriority(Job.LONG);
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            try {
+                this.findNode();
+            } catch (RuntimeException e) {
+                return new Status(IStatus.WARNING, ID, "Could not find Node.js", e);
+            }
+
+            for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+                if (monitor.isCanceled()) {
+                    return Status.CANCEL_STATUS;
+                }
+
+                try {
+                    this.warmUp(project);
+                } catch (CoreException e) {
+                    this.logWarning(project, e);
+                } catch (IOException e) {
+                    this.logWarning(project, e);
+                } catch (RuntimeException e) {
+                    // a project which can't be linted shouldn't hold up the others
+                    this.logWarning(project, e);
+                }
+            }
+
+            return Status.OK_STATUS;
+        }
+
+        private void warmUp(IProject project) throws CoreException, IOException {
+            if (!project.isOpen() || !project.hasNature(ProjectNature.NATURE_ID)) {
+                return;
+            }
+
+            // projects sharing a configuration share the node processes, which are only warmed up once
+            String configurationPath = Builder.getConfigurationPath(project);
+            if (new File(configurationPath).exists()) {
+                TSLintPlugin.this.getLinter(project).warmUp(configurationPath);
+            }
+        }
+
+        private void logWarning(IProject project, Exception e) {
+            String message = "Could not warm up TSLint for " + project.getName();
+
+            TSLintPlugin.this.getLog().log(new Status(IStatus.WARNING, ID, message, e));
+        }
+
+        private void findNode() {
+            IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(ID);
+            NodeRuntime nodeRuntime = NodeRuntime.getDefault();
+
+            String nodePath = prefs.get("nodePath", null);
+            if (nodePath != null) {
+                nodeRuntime.setInstallation(new NodeRuntime.Installation(
+                    new File(nodePath),
+                    prefs.get("nodeVersion", ""),
+                    prefs.getLong("nodeLastModified", 0),
+                    prefs.get("nodeSearchPath", "")));
+            }
+
+            NodeRuntime.Installation installation = nodeRuntime.getInstallation();
+            String installationPath = installation.getFile().getAbsolutePath();
+            if (installationPath.equals(nodePath)
+                    && installation.getLastModified() == prefs.getLong("nodeLastModified", 0)
+                    && installation.getPath().equals(prefs.get("nodeSearchPath", ""))) {
+                return;
+            }
+
+            prefs.put("nodePath", installationPath);
+            prefs.put("nodeVersion", installation.getVersion());
+            prefs.putLong("nodeLastModified", installation.getLastModified());
+            prefs.put("nodeSearchPath", installation.getPath());
+            try {
+                prefs.flush();
+            } catch (BackingStoreException e) {
+                TSLintPlugin.this.getLog().log(new Status(IStatus.WARNING, ID, "Could not save the location of Node.js", e));
+            }
+        }
+    }
+
+    private final class MetricsLogJob extends Job {
+
+        private final long intervalMillis;
+
+        // set once the job is cancelled while it runs, so that it doesn't schedule itself again
+        private volatile boolean cancelled;
+
+        public MetricsLogJob(long intervalMillis) {
+            super("TSLint Metrics");
+
+            this.intervalMillis = intervalMillis;
+            this.setSystem(true);
+        }
+
+        @Override
+        protected void canceling() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public boolean shouldSchedule() {
+            return !this.cancelled;
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            if (monitor.isCanceled()) {
+                return Status.CANCEL_STATUS;
+            }
+
+            String summary = LintMetrics.getDefault().getSummary();
+            TSLintPlugin.this.getLog().log(new Status(IStatus.INFO, ID, "TSLint metrics: " + summary));
+
+            this.schedule(this.intervalMillis);
+
+            return Status.OK_STATUS;
+        }
+    }
+
+    /**
+     * Copies the output of the node processes to the error log, without holding up the threads
+     * which read it.
+     */
+    private final class BridgeLogJob extends Job implements BridgeLog.Listener {
+
+        private final AtomicBoolean scheduled;
+
+        // the last message which has been logged, only used by the job itself
+        private long lastSequence;
+
+        public BridgeLogJob() {
+            super("TSLint Bridge Log");
+
+            this.scheduled = new AtomicBoolean();
+            this.lastSequence = -1;
+            this.setSystem(true);
+        }
+
+        @Override
+        public void entryAdded(BridgeLog.Entry entry) {
+            if (this.scheduled.compareAndSet(false, true)) {
+                this.schedule(BRIDGE_LOG_DELAY_MILLIS);
+            }
+        }
+
+        @Override
+        protected IStatus run(IProgressMonitor monitor) {
+            // messages added from here on schedule the job again
+            this.scheduled.set(false);
+
+            ImmutableList<BridgeLog.Entry> entries = BridgeLog.getDefault().getEntriesAfter(this.lastSequence);
+            if (entries.isEmpty()) {
+                return Status.OK_STATUS;
+            }
+
+            MultiStatus status = new MultiStatus(ID, IStatus.OK, "Output of the TSLint node processes", null);
+
+            long droppedCount = entries.get(0).getSequence() - this.lastSequence - 1;
+            if (droppedCount > 0) {
+                status.add(new Status(IStatus.INFO, ID, droppedCount + " earlier messages were dropped"));
+            }
+
+            for (BridgeLog.Entry entry : entries) {
+                int severity = entry.getKind() == BridgeLog.Kind.ERROR ? IStatus.WARNING : IStatus.INFO;
+
+                status.add(new Status(severity, ID, entry.getMessage()));
+            }
+            this.lastSequence = entries.get(entries.size() - 1).getSequence();
+
+            TSLintPlugin.this.getLog().log(status);
+
+            return Status.OK_STATUS;
+        }
+    }
+
+    private final class ProjectListener implements IResourceChangeListener {
+
+        @Override
+        public void resourceChanged(IResourceChangeEvent event) {
+            if (event.getResource() instanceof IProject) {
+                TSLintPlugin.this.removeLinter((IProject) event.getResource());
+            }
+        }
+    }
+
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Objects;
+
+/**
+ * A change to the contents of a document: the text which replaced a range of the contents.
+ */
+final class TextEdit {
+
+    @JsonProperty("start")
+    private final int start;
+
+    @JsonProperty("length")
+    private final int length;
+
+    @JsonProperty("text")
+    private final String text;
+
+    public TextEdit(int start, int length, String text) {
+        checkArgument(start >= 0);
+        checkArgument(length >= 0);
+        checkNotNull(text);
+
+        this.start = start;
+        this.length = length;
+        this.text = text;
+    }
+
+    public int getStart() {
+        return this.start;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+            .add("start", this.start)
+            .add("length", this.length)
+            .add("text", this.text)
+            .toString();
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.failure;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
+
+/**
+ * An immutable list of rule failures which stores them column by column rather than as objects.
+ * <p>
+ * The paths, rule names and messages are interned, since a large project has only a few distinct
+ * ones of each, and the positions are kept in a single int array. Callers which go through the
+ * indexed getters, such as the marker writer, never create a {@link RuleFailure}; anyone else gets
+ * one created on the fly by {@link #get(int)}.
+ */
+public final class FailureStore extends AbstractList<RuleFailure> implements RandomAccess {
+
+    // shared across stores so that every failure of a rule points at the same strings
+    private static final Interner<String> STRINGS = Interners.newWeakInterner();
+
+    private static final FailureStore EMPTY = new Builder().build();
+
+    private static final int START_POSITION = 0;
+    private static final int START_LINE = 1;
+    private static final int START_CHARACTER = 2;
+    private static final int END_POSITION = 3;
+    private static final int END_LINE = 4;
+    private static final int END_CHARACTER = 5;
+    private static final int POSITION_COUNT = 6;
+
+    private final int size;
+    private final String[] names;
+    private final String[] ruleNames;
+    private final String[] messages;
+    private final int[] positions;
+
+    private FailureStore(int size, String[] names, String[] ruleNames, String[] messages, int[] positions) {
+        this.size = size;
+        this.names = names;
+        this.ruleNames = ruleNames;
+        this.messages = messages;
+        this.positions = positions;
+    }
+
+    public static FailureStore of() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the failures as a store, which is the list itself if it already is one.
+     */
+    public static FailureStore copyOf(List<RuleFailure> ruleFailures) {
+        checkNotNull(ruleFailures);
+
+        if (ruleFailures instanceof FailureStore) {
+            return (FailureStore) ruleFailures;
+        }
+
+        Builder builder = new Builder(ruleFailures.size());
+        for (RuleFailure ruleFailure : ruleFailures) {
+            builder.add(ruleFailure);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public RuleFailure get(int index) {
+        checkElementIndex(index, this.size);
+
+        return new RuleFailure(
+            this.messages[index],
+            this.names[index],
+            this.ruleNames[index],
+            new RuleFailurePosition(this.getStartCharacter(index), this.getStartLine(index), this.getStartPosition(index)),
+            new RuleFailurePosition(this.getEndCharacter(index), this.getEndLine(index), this.getEndPosition(index)));
+    }
+
+    public String getName(int index) {
+        checkElementIndex(index, this.size);
+
+        return this.names[index];
+    }
+
+    public String getRuleName(int index) {
+        checkElementIndex(index, this.size);
+
+        return this.ruleNames[index];
+    }
+
+    public String getFailure(int index) {
+        checkElementIndex(index, this.size);
+
+        return this.messages[index];
+    }
+
+    public int getStartPosition(int index) {
+        return this.getPosition(index, START_POSITION);
+    }
+
+    public int getStartLine(int index) {
+        return this.getPosition(index, START_LINE);
+    }
+
+    public int getStartCharacter(int index) {
+        return this.getPosition(index, START_CHARACTER);
+    }
+
+    public int getEndPosition(int index) {
+        return this.getPosition(index, END_POSITION);
+    }
+
+    public int getEndLine(int index) {
+        return this.getPosition(index, END_LINE);
+    }
+
+    public int getEndCharacter(int index) {
+        return this.getPosition(index, END_CHARACTER);
+    }
+
+    private int getPosition(int index, int offset) {
+        checkElementIndex(index, this.size);
+
+        return this.positions[index * POSITION_COUNT + offset];
+    }
+
+    /**
+     * Collects the failures of a store one by one, for example while they're decoded.
+     */
+    public static final class Builder {
+
+        // most strings repeat within a batch, which is cheaper to look up here than in the interner
+        private final Map<String, String> internedStrings;
+
+        private int size;
+        private String[] names;
+        private String[] ruleNames;
+        private String[] messages;
+        private int[] positions;
+
+        public Builder() {
+            this(0);
+        }
+
+        public Builder(int expectedSize) {
+            this.internedStrings = Maps.newHashMap();
+            this.names = new String[expectedSize];
+            this.ruleNames = new String[expectedSize];
+            this.messages = new String[expectedSize];
+            this.positions = new int[expectedSize * POSITION_COUNT];
+        }
+
+        public Builder add(RuleFailure ruleFailure) {
+            checkNotNull(ruleFailure);
+
+            RuleFailurePosition start = ruleFailure.getStartPosition();
+            RuleFailurePosition end = ruleFailure.getEndPosition();
+
+            return this.add(
+                ruleFailure.getName(),
+                ruleFailure.getRuleName(),
+                ruleFailure.getFailure(),
+                start.getPosition(), start.getLine(), start.getCharacter(),
+                end.getPosition(), end.getLine(), end.getCharacter());
+        }
+
+        public Builder add(String name, String ruleName, String message,
+                int startPosition, int startLine, int startCharacter,
+                int endPosition, int endLine, int endCharacter) {
+            if (this.size == this.names.length) {
+                int capacity = Math.max(4, this.size * 2);
+
+                this.names = Arrays.copyOf(this.names, capacity);
+                this.ruleNames = Arrays.copyOf(this.ruleNames, capacity);
+                this.messages = Arrays.copyOf(this.messages, capacity);
+                this.positions = Arrays.copyOf(this.positions, capacity * POSITION_COUNT);
+            }
+
+            int index = this.size;
+            this.names[index] = this.intern(name);
+            this.ruleNames[index] = this.intern(ruleName);
+            this.messages[index] = this.intern(message);
+
+            int offset = index * POSITION_COUNT;
+            this.positions[offset + START_POSITION] = startPosition;
+            this.positions[offset + START_LINE] = startLine;
+            this.positions[offset + START_CHARACTER] = startCharacter;
+            this.positions[offset + END_POSITION] = endPosition;
+            this.positions[offset + END_LINE] = endLine;
+            this.positions[offset + END_CHARACTER] = endCharacter;
+
+            this.size++;
+
+            return this;
+        }
+
+        private String intern(String value) {
+            if (value == null) {
+                return null;
+            }
+
+            String internedValue = this.internedStrings.get(value);
+            if (internedValue == null) {
+                internedValue = STRINGS.intern(value);
+                this.internedStrings.put(internedValue, internedValue);
+            }
+
+            return internedValue;
+        }
+
+        public FailureStore build() {
+            if (this.size == 0 && EMPTY != null) {
+                return EMPTY;
+            }
+
+            // trim the arrays, since the store may be kept around for a long time
+            return new FailureStore(
+                this.size,
+                Arrays.copyOf(this.names, this.size),
+                Arrays.copyOf(this.ruleNames, this.size),
+                Arrays.copyOf(this.messages, this.size),
+                Arrays.copyOf(this.positions, this.size * POSITION_COUNT));
+        }
+    }
+}
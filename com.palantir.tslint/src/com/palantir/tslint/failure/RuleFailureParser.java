@@ -0,0 +1,133 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.failure;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Maps;
+import com.palantir.tslint.services.ResultParser;
+
+/**
+ * Decodes the rule failures of a batch of files, keyed by file path, in a single pass over the
+ * bridge's response.
+ * <p>
+ * The failures of each file are decoded field by field straight into a {@link FailureStore}, so no
+ * {@link RuleFailure} objects are created along the way.
+ */
+public final class RuleFailureParser implements ResultParser<Map<String, List<RuleFailure>>> {
+
+    @Override
+    public Map<String, List<RuleFailure>> parse(JsonParser parser) throws IOException {
+        parser.nextToken();
+
+        return this.parseObject(parser);
+    }
+
+    /**
+     * Decodes the rule failures of the object the parser is at, for responses which hold them
+     * along with other results.
+     */
+    public Map<String, List<RuleFailure>> parseObject(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected the rule failures to be keyed by path", parser.getCurrentLocation());
+        }
+
+        Map<String, List<RuleFailure>> ruleFailuresByPath = Maps.newLinkedHashMap();
+        int[] positions = new int[6];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String path = parser.getCurrentName();
+            FailureStore.Builder ruleFailures = new FailureStore.Builder();
+
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parseRuleFailure(parser, ruleFailures, positions);
+                }
+            } else {
+                parser.skipChildren();
+            }
+
+            ruleFailuresByPath.put(path, ruleFailures.build());
+        }
+
+        return ruleFailuresByPath;
+    }
+
+    /**
+     * Decodes a single failure into the store, using the positions array as scratch space.
+     */
+    private static void parseRuleFailure(JsonParser parser, FailureStore.Builder ruleFailures, int[] positions)
+            throws IOException {
+        String name = null;
+        String ruleName = null;
+        String failure = null;
+        Arrays.fill(positions, 0);
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            if (fieldName.equals("name")) {
+                name = parser.getValueAsString();
+            } else if (fieldName.equals("ruleName")) {
+                ruleName = parser.getValueAsString();
+            } else if (fieldName.equals("failure")) {
+                failure = parser.getValueAsString();
+            } else if (fieldName.equals("startPosition")) {
+                parsePosition(parser, positions, 0);
+            } else if (fieldName.equals("endPosition")) {
+                parsePosition(parser, positions, 3);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        ruleFailures.add(name, ruleName, failure,
+            positions[0], positions[1], positions[2],
+            positions[3], positions[4], positions[5]);
+    }
+
+    /**
+     * Reads a position into the array as its position, line and character, starting at the offset.
+     */
+    private static void parsePosition(JsonParser parser, int[] positions, int offset) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            if (fieldName.equals("position")) {
+                positions[offset] = parser.getValueAsInt();
+            } else if (fieldName.equals("line")) {
+                positions[offset + 1] = parser.getValueAsInt();
+            } else if (fieldName.equals("character")) {
+                positions[offset + 2] = parser.getValueAsInt();
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+}
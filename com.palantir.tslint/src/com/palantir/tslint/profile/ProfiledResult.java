@@ -0,0 +1,56 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.profile;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+
+import com.palantir.tslint.failure.RuleFailure;
+
+/**
+ * The response to a profiled lint batch: the rule failures of each file along with the time each
+ * rule took on it.
+ */
+public final class ProfiledResult {
+
+    private final Map<String, List<RuleFailure>> ruleFailures;
+    private final Map<String, Map<String, Long>> ruleTimes;
+
+    public ProfiledResult(Map<String, List<RuleFailure>> ruleFailures, Map<String, Map<String, Long>> ruleTimes) {
+        checkNotNull(ruleFailures);
+        checkNotNull(ruleTimes);
+
+        this.ruleFailures = ruleFailures;
+        this.ruleTimes = ruleTimes;
+    }
+
+    /**
+     * Returns the rule failures, keyed by file path.
+     */
+    public Map<String, List<RuleFailure>> getRuleFailures() {
+        return this.ruleFailures;
+    }
+
+    /**
+     * Returns the time each rule took in microseconds, keyed by file path and then by rule name.
+     */
+    public Map<String, Map<String, Long>> getRuleTimes() {
+        return this.ruleTimes;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.profile;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.google.common.collect.ImmutableMap;
+import com.palantir.tslint.failure.RuleFailure;
+import com.palantir.tslint.failure.RuleFailureParser;
+import com.palantir.tslint.services.ResultParser;
+
+/**
+ * Decodes the response to a profiled lint batch, see {@link ProfiledResult}.
+ */
+public final class ProfiledResultParser implements ResultParser<ProfiledResult> {
+
+    private static final ObjectReader RULE_TIMES_READER =
+            new ObjectMapper().reader(new TypeReference<Map<String, Map<String, Long>>>() {});
+
+    private final RuleFailureParser ruleFailureParser;
+
+    public ProfiledResultParser() {
+        this.ruleFailureParser = new RuleFailureParser();
+    }
+
+    @Override
+    public ProfiledResult parse(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected the rule failures and times", parser.getCurrentLocation());
+        }
+
+        Map<String, List<RuleFailure>> ruleFailures = ImmutableMap.of();
+        Map<String, Map<String, Long>> ruleTimes = ImmutableMap.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+
+            if (fieldName.equals("failures")) {
+                ruleFailures = this.ruleFailureParser.parseObject(parser);
+            } else if (fieldName.equals("ruleTimes")) {
+                ruleTimes = RULE_TIMES_READER.readValue(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return new ProfiledResult(ruleFailures, ruleTimes);
+    }
+}
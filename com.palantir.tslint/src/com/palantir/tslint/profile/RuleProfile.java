@@ -0,0 +1,253 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.profile;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Adds up the time each rule took on each file, to find the rules which slow linting down.
+ * <p>
+ * Besides the totals, the few files each rule took longest on are kept, since a rule which is
+ * quadratic in the size of a file shows up as a handful of files taking far longer than the rest.
+ */
+public final class RuleProfile {
+
+    public static final int DEFAULT_SLOWEST_FILE_COUNT = 5;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+    private static final Joiner CSV_JOINER = Joiner.on(',');
+
+    private final int slowestFileCount;
+    private final Map<String, RuleTimes> ruleTimes;
+
+    public RuleProfile() {
+        this(DEFAULT_SLOWEST_FILE_COUNT);
+    }
+
+    /**
+     * @param slowestFileCount the number of slowest files to keep per rule
+     */
+    public RuleProfile(int slowestFileCount) {
+        checkArgument(slowestFileCount >= 0);
+
+        this.slowestFileCount = slowestFileCount;
+        this.ruleTimes = Maps.newHashMap();
+    }
+
+    /**
+     * Records the time each rule took on a file.
+     *
+     * @param microsByRule the time in microseconds, keyed by rule name
+     */
+    public synchronized void record(String path, Map<String, Long> microsByRule) {
+        checkNotNull(path);
+        checkNotNull(microsByRule);
+
+        for (Map.Entry<String, Long> entry : microsByRule.entrySet()) {
+            RuleTimes times = this.ruleTimes.get(entry.getKey());
+            if (times == null) {
+                times = new RuleTimes();
+                this.ruleTimes.put(entry.getKey(), times);
+            }
+
+            times.record(path, entry.getValue(), this.slowestFileCount);
+        }
+    }
+
+    /**
+     * Records the rule times of every file of a profiled lint batch.
+     */
+    public void record(ProfiledResult result) {
+        checkNotNull(result);
+
+        for (Map.Entry<String, Map<String, Long>> entry : result.getRuleTimes().entrySet()) {
+            this.record(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.ruleTimes.isEmpty();
+    }
+
+    public synchronized void reset() {
+        this.ruleTimes.clear();
+    }
+
+    /**
+     * Returns the times of each rule, ordered by the comparator, for example
+     * {@link RuleStats#BY_TOTAL_TIME}.
+     */
+    public List<RuleStats> getRuleStats(Comparator<RuleStats> comparator) {
+        checkNotNull(comparator);
+
+        List<RuleStats> ruleStats = Lists.newArrayList();
+        synchronized (this) {
+            for (Map.Entry<String, RuleTimes> entry : this.ruleTimes.entrySet()) {
+                ruleStats.add(entry.getValue().toStats(entry.getKey()));
+            }
+        }
+
+        Collections.sort(ruleStats, comparator);
+
+        return ruleStats;
+    }
+
+    /**
+     * Writes the profile as CSV, one line per rule, slowest rule first. The slowest files of each
+     * rule are joined into a single column.
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        checkNotNull(writer);
+
+        writer.write("rule,totalMillis,calls,meanMillis,maximumMillis,slowestFiles");
+        writer.write(LINE_SEPARATOR);
+
+        for (RuleStats stats : this.getRuleStats(RuleStats.BY_TOTAL_TIME)) {
+            List<String> slowestFiles = Lists.newArrayList();
+            for (Map.Entry<String, Long> entry : stats.getSlowestFiles().entrySet()) {
+                slowestFiles.add(entry.getKey() + " (" + toMillis(entry.getValue()) + " ms)");
+            }
+
+            writer.write(CSV_JOINER.join(
+                escapeCsv(stats.getRuleName()),
+                toMillis(stats.getTotalMicros()),
+                stats.getCallCount(),
+                toMillis(stats.getMeanMicros()),
+                toMillis(stats.getMaximumMicros()),
+                escapeCsv(Joiner.on("; ").join(slowestFiles))));
+            writer.write(LINE_SEPARATOR);
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the profile as a JSON array, slowest rule first.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        checkNotNull(writer);
+
+        JsonGenerator generator = new JsonFactory().createGenerator(writer);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.useDefaultPrettyPrinter();
+
+        generator.writeStartArray();
+        for (RuleStats stats : this.getRuleStats(RuleStats.BY_TOTAL_TIME)) {
+            generator.writeStartObject();
+            generator.writeStringField("rule", stats.getRuleName());
+            generator.writeNumberField("totalMillis", toMillis(stats.getTotalMicros()));
+            generator.writeNumberField("calls", stats.getCallCount());
+            generator.writeNumberField("meanMillis", toMillis(stats.getMeanMicros()));
+            generator.writeNumberField("maximumMillis", toMillis(stats.getMaximumMicros()));
+
+            generator.writeArrayFieldStart("slowestFiles");
+            for (Map.Entry<String, Long> entry : stats.getSlowestFiles().entrySet()) {
+                generator.writeStartObject();
+                generator.writeStringField("path", entry.getKey());
+                generator.writeNumberField("millis", toMillis(entry.getValue()));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+
+        generator.close();
+        writer.flush();
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static String escapeCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * The running totals of a rule, guarded by the profile.
+     */
+    private static final class RuleTimes {
+
+        private long totalMicros;
+        private long callCount;
+        private long maximumMicros;
+
+        // slowest first, at most slowestFileCount of them
+        private final List<Map.Entry<String, Long>> slowestFiles = Lists.newArrayList();
+
+        public void record(String path, long micros, int slowestFileCount) {
+            this.totalMicros += micros;
+            this.callCount++;
+            this.maximumMicros = Math.max(this.maximumMicros, micros);
+
+            // a file which was linted again only keeps its slowest time
+            for (int i = 0; i < this.slowestFiles.size(); i++) {
+                if (this.slowestFiles.get(i).getKey().equals(path)) {
+                    if (this.slowestFiles.get(i).getValue() >= micros) {
+                        return;
+                    }
+
+                    this.slowestFiles.remove(i);
+                    break;
+                }
+            }
+
+            int index = this.slowestFiles.size();
+            while (index > 0 && this.slowestFiles.get(index - 1).getValue() < micros) {
+                index--;
+            }
+
+            if (index < slowestFileCount) {
+                this.slowestFiles.add(index, Maps.immutableEntry(path, micros));
+
+                if (this.slowestFiles.size() > slowestFileCount) {
+                    this.slowestFiles.remove(this.slowestFiles.size() - 1);
+                }
+            }
+        }
+
+        public RuleStats toStats(String ruleName) {
+            ImmutableMap.Builder<String, Long> slowestFiles = ImmutableMap.builder();
+            for (Map.Entry<String, Long> entry : this.slowestFiles) {
+                slowestFiles.put(entry);
+            }
+
+            return new RuleStats(ruleName, this.totalMicros, this.callCount, this.maximumMicros, slowestFiles.build());
+        }
+    }
+}
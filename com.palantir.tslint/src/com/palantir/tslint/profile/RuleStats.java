@@ -0,0 +1,96 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.profile;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Comparator;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Longs;
+
+/**
+ * The time a single rule took across all of the files it was applied to.
+ */
+public final class RuleStats {
+
+    public static final Comparator<RuleStats> BY_TOTAL_TIME = new Comparator<RuleStats>() {
+        @Override
+        public int compare(RuleStats left, RuleStats right) {
+            return Longs.compare(right.totalMicros, left.totalMicros);
+        }
+    };
+
+    public static final Comparator<RuleStats> BY_CALL_COUNT = new Comparator<RuleStats>() {
+        @Override
+        public int compare(RuleStats left, RuleStats right) {
+            return Longs.compare(right.callCount, left.callCount);
+        }
+    };
+
+    public static final Comparator<RuleStats> BY_MAXIMUM_TIME = new Comparator<RuleStats>() {
+        @Override
+        public int compare(RuleStats left, RuleStats right) {
+            return Longs.compare(right.maximumMicros, left.maximumMicros);
+        }
+    };
+
+    private final String ruleName;
+    private final long totalMicros;
+    private final long callCount;
+    private final long maximumMicros;
+    private final ImmutableMap<String, Long> slowestFiles;
+
+    RuleStats(String ruleName, long totalMicros, long callCount, long maximumMicros, ImmutableMap<String, Long> slowestFiles) {
+        this.ruleName = checkNotNull(ruleName);
+        this.totalMicros = totalMicros;
+        this.callCount = callCount;
+        this.maximumMicros = maximumMicros;
+        this.slowestFiles = checkNotNull(slowestFiles);
+    }
+
+    public String getRuleName() {
+        return this.ruleName;
+    }
+
+    public long getTotalMicros() {
+        return this.totalMicros;
+    }
+
+    /**
+     * Returns the number of files the rule was applied to.
+     */
+    public long getCallCount() {
+        return this.callCount;
+    }
+
+    public long getMeanMicros() {
+        return this.callCount > 0 ? this.totalMicros / this.callCount : 0;
+    }
+
+    public long getMaximumMicros() {
+        return this.maximumMicros;
+    }
+
+    /**
+     * Returns the files the rule took longest on, slowest first, with the time it took in
+     * microseconds.
+     */
+    public ImmutableMap<String, Long> getSlowestFiles() {
+        return this.slowestFiles;
+    }
+}
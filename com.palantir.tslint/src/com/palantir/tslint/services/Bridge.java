@@ -16,204 +16,718 @@
 
 package com.palantir.tslint.services;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.List;
-
-import org.eclipse.core.runtime.FileLocator;
-
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.google.common.base.Charsets;
-import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.palantir.tslint.TSLintPlugin;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * This handles all requests for TSLint.
+ * <p>
+ * Requests are tagged with an identifier which the bridge echoes back with its response, so any
+ * number of requests may be written to the node process before the first response arrives. A
+ * dedicated thread reads the responses and completes the matching futures.
+ * <p>
+ * Requests are written as lines of JSON. The responses come back as length-prefixed frames, see
+ * {@link FrameReader}, so that results of any size are decoded straight from the bytes read and
+ * whatever else node writes to its stdout can't be mistaken for a response.
+ * <p>
+ * Both stdout and stderr are drained continuously by threads of their own, so node never blocks on
+ * a full pipe, however much a rule logs. Anything which isn't a response goes to the
+ * {@link BridgeLog} rather than to the threads waiting for results.
+ * <p>
+ * The node process is stopped once it has been idle for a while and started again on the next
+ * request, replaying the configuration. If the process crashes, the requests it was working on are
+ * retried once on a new process.
+ * <p>
+ * The bridge doesn't depend on Eclipse, so it can be driven by anything which knows where the
+ * bridge script lives.
  *
  * @author aramaswamy
  */
 public final class Bridge {
 
     private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    private static final String ERROR_PREFIX = "ERROR: ";
-    private static final String RESULT_PREFIX = "RESULT: ";
+    private static final String CRASHED_MESSAGE = "The node process has crashed.";
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
 
-    private static final String OS_NAME = System.getProperty("os.name");
-    private static final Splitter PATH_SPLITTER = Splitter.on(File.pathSeparatorChar);
+    // how long a stopped node process has to exit on its own before it's destroyed
+    private static final long EXIT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("TSLint Bridge Timer").setDaemon(true).build());
+
+    // Void can't be instantiated, which newer JVMs won't let Jackson work around
+    private static final ResultParser<Void> VOID_PARSER = new ResultParser<Void>() {
+        @Override
+        public Void parse(JsonParser parser) throws IOException {
+            parser.nextToken();
+            parser.skipChildren();
 
-    private Process nodeProcess;
-    private BufferedReader nodeStdout;
-    private PrintWriter nodeStdin;
+            return null;
+        }
+    };
 
+    private final File bridgeFile;
     private final ObjectMapper mapper;
+    private final Map<Long, PendingRequest<?>> pendingRequests;
+    private final long idleTimeoutMillis;
+
+    private final LintMetrics metrics;
+    private final BridgeLog log;
+
+    // guarded by this, but read without the lock for the metrics
+    private volatile NodeProcess nodeProcess;
+    private Request configurationRequest;
+    private volatile long lastActivityNanos;
+    private volatile long residentBytes;
+    private boolean started;
+    private boolean disposed;
+
+    // told once the node process was stopped for being idle, outside the bridge's lock
+    private volatile Runnable idleListener;
+
+    public Bridge(File bridgeFile) {
+        this(bridgeFile, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
 
-    public Bridge() {
+    /**
+     * @param bridgeFile the script which node runs, normally bin/bridge.js
+     * @param idleTimeoutMillis how long the node process may be idle before it is stopped, or 0 to
+     *            keep it running until the bridge is disposed
+     */
+    public Bridge(File bridgeFile, long idleTimeoutMillis) {
+        checkNotNull(bridgeFile);
+        checkArgument(idleTimeoutMillis >= 0);
+
+        this.bridgeFile = bridgeFile;
         this.mapper = new ObjectMapper();
+        this.pendingRequests = Maps.newConcurrentMap();
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.metrics = LintMetrics.getDefault();
+        this.metrics.bridgeCreated(this);
+        this.log = BridgeLog.getDefault();
 
         // start the node process
-        this.start();
+        synchronized (this) {
+            this.getNodeProcess();
+        }
+    }
+
+    /**
+     * Sends a request which sets up the node process, such as setting the configuration, and waits
+     * for it to complete.
+     * <p>
+     * The latest such request is sent again first whenever the node process is restarted.
+     */
+    public void configure(Request request) {
+        checkNotNull(request);
+
+        ListenableFuture<Void> future;
+        synchronized (this) {
+            future = this.callAsync(request, VOID_PARSER);
+
+            // the running process gets the request above, only later ones need a replay
+            this.configurationRequest = request;
+        }
+
+        getResult(future);
     }
 
     public <T> T call(Request request, Class<T> resultType) {
         checkNotNull(request);
         checkNotNull(resultType);
 
+        return getResult(this.callAsync(request, resultType));
+    }
+
+    public <T> T call(Request request, JavaType resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
+        return getResult(this.<T> callAsync(request, resultType));
+    }
+
+    public <T> T call(Request request, ResultParser<T> resultParser) {
+        checkNotNull(request);
+        checkNotNull(resultParser);
+
+        return getResult(this.callAsync(request, resultParser));
+    }
+
+    public <T> ListenableFuture<T> callAsync(Request request, Class<T> resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
         JavaType type = TypeFactory.defaultInstance().uncheckedSimpleType(resultType);
 
-        return this.call(request, type);
+        return this.callAsync(request, type);
     }
 
-    public synchronized <T> T call(Request request, JavaType resultType) {
+    /**
+     * Sends the request to the bridge without waiting for the response.
+     * <p>
+     * The returned future completes once the bridge has responded to this particular request;
+     * responses to other requests may arrive before or after it.
+     */
+    public <T> ListenableFuture<T> callAsync(Request request, JavaType resultType) {
         checkNotNull(request);
         checkNotNull(resultType);
 
-        // process the request
-        String resultJson;
-        try {
-            String requestJson = this.mapper.writeValueAsString(request);
+        if (resultType.getRawClass() == Void.class) {
+            @SuppressWarnings("unchecked")
+            ResultParser<T> voidParser = (ResultParser<T>) VOID_PARSER;
 
-            resultJson = this.processRequest(requestJson);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return this.callAsync(request, voidParser);
         }
 
-        // convert the JSON result into a Java object
-        try {
-            return this.mapper.readValue(resultJson, resultType);
-        } catch (IOException e) {
-            throw new RuntimeException("Error parsing result: " + resultJson, e);
-        }
+        return this.callAsync(request, new ReaderResultParser<T>(this.mapper.reader(resultType)));
     }
 
-    public void dispose() {
-        this.nodeStdin.close();
+    /**
+     * Sends the request to the bridge, decoding the response with the given parser as soon as it
+     * arrives.
+     * <p>
+     * Cancelling the returned future aborts the request: it is dropped from node's queue if node
+     * hasn't started on it yet, and any response to it is ignored.
+     */
+    public <T> ListenableFuture<T> callAsync(Request request, ResultParser<T> resultParser) {
+        checkNotNull(request);
+        checkNotNull(resultParser);
 
+        String requestJson;
         try {
-            this.nodeStdout.close();
+            requestJson = this.mapper.writeValueAsString(request);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        this.nodeProcess = null;
+        final PendingRequest<T> pendingRequest = new PendingRequest<T>(request.getId(), requestJson, resultParser);
+        this.send(pendingRequest);
+
+        pendingRequest.future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                if (pendingRequest.future.isCancelled()) {
+                    cancel(pendingRequest);
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+
+        return pendingRequest.future;
     }
 
-    private String processRequest(String requestJson) throws IOException {
-        checkNotNull(requestJson);
+    /**
+     * Returns the number of requests which have been sent to the bridge but not yet answered.
+     */
+    public int getPendingRequestCount() {
+        return this.pendingRequests.size();
+    }
+
+    boolean isRunning() {
+        return this.nodeProcess != null;
+    }
+
+    /**
+     * Sets what to do once the node process was stopped for being idle, such as giving up the
+     * bridge. It's called on the idle timer's thread without holding the bridge's lock.
+     */
+    void setIdleListener(Runnable idleListener) {
+        this.idleListener = idleListener;
+    }
+
+    /**
+     * Returns the resident set size of the node process as of its latest response, or 0 if it isn't
+     * running.
+     */
+    long getResidentBytes() {
+        return this.nodeProcess != null ? this.residentBytes : 0;
+    }
+
+    public synchronized void dispose() {
+        this.disposed = true;
+        this.metrics.bridgeDisposed(this);
+
+        if (this.nodeProcess != null) {
+            this.stop(this.nodeProcess);
+        }
+    }
+
+    private synchronized void send(PendingRequest<?> pendingRequest) {
+        if (this.disposed) {
+            pendingRequest.future.setException(new IllegalStateException("The bridge has been disposed."));
+            return;
+        }
+
+        NodeProcess nodeProcess = this.getNodeProcess();
+        pendingRequest.nodeProcess = nodeProcess;
+        pendingRequest.sentNanos = System.nanoTime();
+        this.pendingRequests.put(pendingRequest.id, pendingRequest);
+        this.lastActivityNanos = pendingRequest.sentNanos;
 
         // write the request JSON to the bridge's stdin
-        this.nodeStdin.println(requestJson);
-
-        // read the response JSON from the bridge's stdout
-        String resultJson = null;
-        do {
-            String line = this.nodeStdout.readLine();
-
-            // process errors and logger statements
-            if (line == null) {
-                throw new IllegalStateException("The node process has crashed.");
-            } else if (line.startsWith(ERROR_PREFIX)) {
-                // remove prefix
-                line = line.substring(ERROR_PREFIX.length(), line.length());
-                // put newlines back
-                line = line.replaceAll("\\\\n", LINE_SEPARATOR); // put newlines back
-                // replace soft tabs with hardtabs to match Java's error stack trace.
-                line = line.replaceAll("    ", "\t");
-
-                throw new RuntimeException("The following request caused an error to be thrown:" + LINE_SEPARATOR
-                        + requestJson + LINE_SEPARATOR
-                        + line);
-            } else if (line.startsWith(RESULT_PREFIX)) {
-                resultJson = line.substring(RESULT_PREFIX.length());
-            } else { // log statement
-                System.out.println(line);
-            }
-        } while (resultJson == null);
-
-        return resultJson;
-    }
-
-    private void start() {
-        File nodeFile = Bridge.findNode();
-        String nodePath = nodeFile.getAbsolutePath();
-
-        // get the path to the bridge.js file
-        File bundleFile;
+        nodeProcess.stdin.println(pendingRequest.requestJson);
+    }
+
+    private synchronized void cancel(PendingRequest<?> pendingRequest) {
+        if (this.pendingRequests.remove(pendingRequest.id) == null) {
+            return;
+        }
+
+        // tell node to skip the request, unless the process it was sent to is already gone
+        NodeProcess nodeProcess = pendingRequest.nodeProcess;
+        if (nodeProcess == this.nodeProcess) {
+            Request cancelRequest = new Request("cancel", ImmutableList.of(pendingRequest.id));
+
+            try {
+                nodeProcess.stdin.println(this.mapper.writeValueAsString(cancelRequest));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the running node process, starting a new one if necessary.
+     */
+    private NodeProcess getNodeProcess() {
+        if (this.nodeProcess != null) {
+            return this.nodeProcess;
+        }
+
+        NodeProcess nodeProcess = this.start();
+        this.nodeProcess = nodeProcess;
+        this.lastActivityNanos = System.nanoTime();
+        this.residentBytes = 0;
+
+        if (this.started) {
+            this.metrics.nodeProcessRestarted();
+        }
+        this.started = true;
+
+        // the new process has to be configured before it handles anything else
+        if (this.configurationRequest != null) {
+            Request request = this.configurationRequest.copy();
+            try {
+                String requestJson = this.mapper.writeValueAsString(request);
+                PendingRequest<Void> pendingRequest = new PendingRequest<Void>(
+                    request.getId(), requestJson, VOID_PARSER);
+
+                pendingRequest.nodeProcess = nodeProcess;
+                pendingRequest.sentNanos = System.nanoTime();
+                pendingRequest.retried = true;
+                this.pendingRequests.put(pendingRequest.id, pendingRequest);
+                nodeProcess.stdin.println(requestJson);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (this.idleTimeoutMillis > 0) {
+            TIMER.schedule(new IdleCheck(nodeProcess), this.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        return nodeProcess;
+    }
+
+    private void stop(NodeProcess nodeProcess) {
+        nodeProcess.stopped = true;
+        nodeProcess.stdin.close();
+
+        // each stream is closed on its own, so a failure to close one doesn't leave the others open
         try {
-            bundleFile = FileLocator.getBundleFile(TSLintPlugin.getDefault().getBundle());
+            nodeProcess.stdout.close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            // the process is going away anyway
         }
-        File bridgeFile = new File(bundleFile, "bin/bridge.js");
-        String bridgePath = bridgeFile.getAbsolutePath();
+        try {
+            nodeProcess.stderr.close();
+        } catch (IOException e) {
+            // the process is going away anyway
+        }
+
+        // node exits once its stdin is closed, unless it's stuck
+        TIMER.schedule(new ExitCheck(nodeProcess), EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        this.nodeProcess = null;
+    }
 
-        // construct the arguments
-        ImmutableList.Builder<String> argsBuilder = ImmutableList.builder();
-        argsBuilder.add(nodePath);
-        argsBuilder.add(bridgePath);
+    /**
+     * Called once the output of a node process has ended, either because it was stopped or because
+     * it crashed.
+     */
+    private synchronized void processExited(NodeProcess nodeProcess) {
+        if (this.nodeProcess == nodeProcess) {
+            this.nodeProcess = null;
+        }
+
+        // a stopped process is checked on by stop, but a process which closed its stdout may still be around
+        if (!nodeProcess.stopped) {
+            TIMER.schedule(new ExitCheck(nodeProcess), EXIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+            if (!this.disposed) {
+                this.metrics.nodeProcessCrashed();
+            }
+        }
+
+        List<PendingRequest<?>> retries = Lists.newArrayList();
+        for (PendingRequest<?> pendingRequest : ImmutableList.copyOf(this.pendingRequests.values())) {
+            if (pendingRequest.nodeProcess != nodeProcess || this.pendingRequests.remove(pendingRequest.id) == null) {
+                continue;
+            }
+
+            // a request which crashes the process twice is most likely the reason for the crash
+            if (nodeProcess.stopped || this.disposed || pendingRequest.retried) {
+                this.metrics.requestFailed();
+                pendingRequest.future.setException(new IllegalStateException(CRASHED_MESSAGE));
+            } else {
+                pendingRequest.retried = true;
+                retries.add(pendingRequest);
+            }
+        }
+
+        for (PendingRequest<?> pendingRequest : retries) {
+            try {
+                this.send(pendingRequest);
+            } catch (RuntimeException e) {
+                pendingRequest.future.setException(e);
+            }
+        }
+    }
+
+    private void processFrame(FrameReader frameReader) {
+        this.lastActivityNanos = System.nanoTime();
+
+        switch (frameReader.getType()) {
+            case FrameReader.RESULT: {
+                // the request was cancelled after node started on it
+                PendingRequest<?> pendingRequest = this.pendingRequests.remove(frameReader.getLong(0));
+                if (pendingRequest == null) {
+                    return;
+                }
+
+                long nodeMicros = frameReader.getLong(8);
+                this.residentBytes = frameReader.getLong(16);
+
+                pendingRequest.complete(this.mapper.getFactory(), frameReader.getBuffer(), 24, frameReader.getLength() - 24);
+                this.metrics.requestCompleted(System.nanoTime() - pendingRequest.sentNanos, nodeMicros);
+                break;
+            }
+
+            case FrameReader.ERROR: {
+                PendingRequest<?> pendingRequest = this.pendingRequests.remove(frameReader.getLong(0));
+                String error = frameReader.getString(8);
+                if (pendingRequest == null) {
+                    this.log.add(BridgeLog.Kind.ERROR, error);
+                    return;
+                }
+
+                this.metrics.requestFailed();
+                pendingRequest.future.setException(new RuntimeException("The following request caused an error to be thrown:"
+                        + LINE_SEPARATOR
+                        + pendingRequest.requestJson + LINE_SEPARATOR
+                        + error));
+                break;
+            }
+
+            case FrameReader.LOG:
+                this.log.add(BridgeLog.Kind.OUTPUT, frameReader.getString(0));
+                break;
+
+            default:
+                // newer bridges may send frames which this one doesn't know about
+                break;
+        }
+    }
+
+    private NodeProcess start() {
+        String bridgePath = this.bridgeFile.getAbsolutePath();
 
         // start the node process and create a reader/writer for its stdin/stdout
-        List<String> args = argsBuilder.build();
-        ProcessBuilder processBuilder = new ProcessBuilder(args.toArray(new String[args.size()]));
+        ProcessBuilder processBuilder = NodeRuntime.getDefault().createProcessBuilder(ImmutableList.of(bridgePath));
+        Process process;
         try {
-            this.nodeProcess = processBuilder.start();
+            process = processBuilder.start();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        this.nodeStdout = new BufferedReader(new InputStreamReader(this.nodeProcess.getInputStream(), Charsets.UTF_8));
-        this.nodeStdin = new PrintWriter(new OutputStreamWriter(this.nodeProcess.getOutputStream(), Charsets.UTF_8), true);
+        NodeProcess nodeProcess = new NodeProcess(process);
+
+        // read the responses on a separate thread so that requests can be pipelined
+        new StdoutReaderThread(nodeProcess).start();
+
+        // node blocks once the stderr pipe is full, so it has to be read even though nobody waits for it
+        new StderrReaderThread(nodeProcess).start();
 
         // add a shutdown hook to destroy the node process in case its not properly disposed
-        Runtime.getRuntime().addShutdownHook(new ShutdownHookThread());
+        Runtime.getRuntime().addShutdownHook(nodeProcess.shutdownHook);
+
+        return nodeProcess;
+    }
+
+    static <T> T getResult(ListenableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            // nobody is waiting for the result anymore
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static final class NodeProcess {
+
+        private final Process process;
+        private final InputStream stdout;
+        private final InputStream stderr;
+        private final PrintWriter stdin;
+        private final ShutdownHookThread shutdownHook;
+
+        // whether the process was stopped on purpose rather than crashing
+        private volatile boolean stopped;
+
+        public NodeProcess(Process process) {
+            this.process = process;
+            this.stdout = process.getInputStream();
+            this.stderr = process.getErrorStream();
+            this.stdin = new PrintWriter(new OutputStreamWriter(process.getOutputStream(), Charsets.UTF_8), true);
+            this.shutdownHook = new ShutdownHookThread(process);
+        }
+
+        public boolean isAlive() {
+            try {
+                this.process.exitValue();
+                return false;
+            } catch (IllegalThreadStateException e) {
+                return true;
+            }
+        }
+
+        /**
+         * Removes the shutdown hook once the process is gone, so that restarts don't pile up hooks
+         * which hold on to dead processes.
+         */
+        public void removeShutdownHook() {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+            } catch (IllegalStateException e) {
+                // the JVM is shutting down already, so the hook is about to run anyway
+            }
+        }
+    }
+
+    private static final class PendingRequest<T> {
+
+        private final long id;
+        private final String requestJson;
+        private final ResultParser<T> resultParser;
+        private final SettableFuture<T> future;
+
+        // the process the request was last sent to and when, guarded by the bridge
+        private NodeProcess nodeProcess;
+        private long sentNanos;
+        private boolean retried;
+
+        public PendingRequest(long id, String requestJson, ResultParser<T> resultParser) {
+            this.id = id;
+            this.requestJson = requestJson;
+            this.resultParser = resultParser;
+            this.future = SettableFuture.create();
+        }
+
+        public void complete(JsonFactory factory, byte[] buffer, int offset, int length) {
+            // decode the result directly from the bytes of the frame
+            try {
+                JsonParser parser = factory.createParser(buffer, offset, length);
+                try {
+                    this.future.set(this.resultParser.parse(parser));
+                } finally {
+                    parser.close();
+                }
+            } catch (IOException e) {
+                String result = new String(buffer, offset, length, Charsets.UTF_8);
+
+                this.future.setException(new RuntimeException("Error parsing result: " + result, e));
+            } catch (RuntimeException e) {
+                this.future.setException(e);
+            }
+        }
+    }
+
+    private static final class ReaderResultParser<T> implements ResultParser<T> {
+
+        private final ObjectReader reader;
+
+        public ReaderResultParser(ObjectReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public T parse(JsonParser parser) throws IOException {
+            return this.reader.readValue(parser);
+        }
     }
 
-    private static File findNode() {
-        String nodeFileName = getNodeFileName();
-        String path = System.getenv("PATH");
-        List<String> directories = Lists.newArrayList(PATH_SPLITTER.split(path));
+    private final class IdleCheck implements Runnable {
+
+        private final NodeProcess nodeProcess;
 
-        // ensure /usr/local/bin is included for OS X
-        if (OS_NAME.startsWith("Mac OS X")) {
-            directories.add("/usr/local/bin");
+        public IdleCheck(NodeProcess nodeProcess) {
+            this.nodeProcess = nodeProcess;
         }
 
-        // search for Node.js in the PATH directories
-        for (String directory : directories) {
-            File nodeFile = new File(directory, nodeFileName);
+        @Override
+        public void run() {
+            if (this.stopIfIdle()) {
+                Runnable idleListener = Bridge.this.idleListener;
 
-            if (nodeFile.exists()) {
-                return nodeFile;
+                if (idleListener != null) {
+                    idleListener.run();
+                }
             }
         }
 
-        throw new IllegalStateException("Could not find Node.js.");
+        private boolean stopIfIdle() {
+            synchronized (Bridge.this) {
+                if (Bridge.this.nodeProcess != this.nodeProcess) {
+                    return false;
+                }
+
+                long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - Bridge.this.lastActivityNanos);
+                long delayMillis = Bridge.this.idleTimeoutMillis;
+                if (Bridge.this.pendingRequests.isEmpty()) {
+                    if (idleMillis >= Bridge.this.idleTimeoutMillis) {
+                        Bridge.this.stop(this.nodeProcess);
+                        return true;
+                    }
+
+                    delayMillis -= idleMillis;
+                }
+
+                TIMER.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+                return false;
+            }
+        }
     }
 
-    private static String getNodeFileName() {
-        if (OS_NAME.startsWith("Windows")) {
-            return "node.exe";
+    /**
+     * Destroys a node process which didn't exit in time after it was stopped, and removes its
+     * shutdown hook, which is kept until then so that the process can't outlive Eclipse.
+     */
+    private static final class ExitCheck implements Runnable {
+
+        private final NodeProcess nodeProcess;
+
+        public ExitCheck(NodeProcess nodeProcess) {
+            this.nodeProcess = nodeProcess;
         }
 
-        return "node";
+        @Override
+        public void run() {
+            if (this.nodeProcess.isAlive()) {
+                this.nodeProcess.process.destroy();
+            }
+
+            this.nodeProcess.removeShutdownHook();
+        }
     }
 
-    private class ShutdownHookThread extends Thread {
+    private class StdoutReaderThread extends Thread {
+
+        private final NodeProcess nodeProcess;
+
+        public StdoutReaderThread(NodeProcess nodeProcess) {
+            super("TSLint Bridge Reader");
+
+            this.nodeProcess = nodeProcess;
+            this.setDaemon(true);
+        }
+
         @Override
         public void run() {
-            Process process = Bridge.this.nodeProcess;
+            FrameReader frameReader = new FrameReader(this.nodeProcess.stdout);
+
+            try {
+                while (frameReader.next()) {
+                    processFrame(frameReader);
+                }
+            } catch (IOException e) {
+                // the stream was closed by dispose or the process went away
+            }
+
+            processExited(this.nodeProcess);
+        }
+    }
+
+    private class StderrReaderThread extends Thread {
+
+        private final NodeProcess nodeProcess;
+
+        public StderrReaderThread(NodeProcess nodeProcess) {
+            super("TSLint Bridge Error Reader");
+
+            this.nodeProcess = nodeProcess;
+            this.setDaemon(true);
+        }
 
-            if (process != null) {
-                process.destroy();
+        @Override
+        public void run() {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(this.nodeProcess.stderr, Charsets.UTF_8));
+
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    log.add(BridgeLog.Kind.ERROR, line);
+                }
+            } catch (IOException e) {
+                // the stream was closed by dispose or the process went away
             }
         }
     }
+
+    private static final class ShutdownHookThread extends Thread {
+
+        private final Process process;
+
+        public ShutdownHookThread(Process process) {
+            this.process = process;
+        }
+
+        @Override
+        public void run() {
+            this.process.destroy();
+        }
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * The diagnostics written by the node processes of this JVM, such as the output of rules calling
+ * console.log and whatever ends up on stderr.
+ * <p>
+ * Only the latest {@value #CAPACITY} messages are kept, so a process flooding its output can't
+ * use up the heap. Each message gets a sequence number, which tells consumers how many messages
+ * they missed since they last looked.
+ * <p>
+ * Messages are added by the threads which read the output of the node processes, and listeners
+ * are called on those threads, so they must not block.
+ */
+public final class BridgeLog {
+
+    public static final int CAPACITY = 500;
+
+    private static final int MAXIMUM_MESSAGE_LENGTH = 4 * 1024;
+    private static final BridgeLog DEFAULT = new BridgeLog();
+
+    public enum Kind {
+        // written to stdout, for example with console.log
+        OUTPUT,
+
+        // written to stderr, or errors which couldn't be matched to a request
+        ERROR
+    }
+
+    private final Entry[] entries;
+    private final List<Listener> listeners;
+
+    // guarded by this
+    private long nextSequence;
+
+    private BridgeLog() {
+        this.entries = new Entry[CAPACITY];
+        this.listeners = new CopyOnWriteArrayList<Listener>();
+    }
+
+    public static BridgeLog getDefault() {
+        return DEFAULT;
+    }
+
+    public void addListener(Listener listener) {
+        this.listeners.add(checkNotNull(listener));
+    }
+
+    public void removeListener(Listener listener) {
+        this.listeners.remove(checkNotNull(listener));
+    }
+
+    /**
+     * Returns the messages which are still kept, oldest first.
+     */
+    public ImmutableList<Entry> getEntries() {
+        return this.getEntriesAfter(-1);
+    }
+
+    /**
+     * Returns the messages after the one with the given sequence number which are still kept,
+     * oldest first.
+     */
+    public synchronized ImmutableList<Entry> getEntriesAfter(long sequence) {
+        long start = Math.max(sequence + 1, Math.max(0, this.nextSequence - CAPACITY));
+
+        ImmutableList.Builder<Entry> builder = ImmutableList.builder();
+        for (long i = start; i < this.nextSequence; i++) {
+            builder.add(this.entries[(int) (i % CAPACITY)]);
+        }
+
+        return builder.build();
+    }
+
+    void add(Kind kind, String message) {
+        checkNotNull(kind);
+        checkNotNull(message);
+
+        String trimmedMessage = trimTrailingWhitespace(message);
+        if (trimmedMessage.isEmpty()) {
+            return;
+        }
+        if (trimmedMessage.length() > MAXIMUM_MESSAGE_LENGTH) {
+            trimmedMessage = trimmedMessage.substring(0, MAXIMUM_MESSAGE_LENGTH) + "...";
+        }
+
+        Entry entry;
+        synchronized (this) {
+            entry = new Entry(this.nextSequence, System.currentTimeMillis(), kind, trimmedMessage);
+            this.entries[(int) (this.nextSequence % CAPACITY)] = entry;
+            this.nextSequence++;
+        }
+
+        for (Listener listener : this.listeners) {
+            listener.entryAdded(entry);
+        }
+    }
+
+    private static String trimTrailingWhitespace(String message) {
+        int end = message.length();
+        while (end > 0 && Character.isWhitespace(message.charAt(end - 1))) {
+            end--;
+        }
+
+        return message.substring(0, end);
+    }
+
+    public interface Listener {
+
+        /**
+         * Called on the thread reading the node process's output, which must not be held up.
+         */
+        void entryAdded(Entry entry);
+    }
+
+    public static final class Entry {
+
+        private final long sequence;
+        private final long timeMillis;
+        private final Kind kind;
+        private final String message;
+
+        private Entry(long sequence, long timeMillis, Kind kind, String message) {
+            checkArgument(sequence >= 0);
+
+            this.sequence = sequence;
+            this.timeMillis = timeMillis;
+            this.kind = kind;
+            this.message = message;
+        }
+
+        public long getSequence() {
+            return this.sequence;
+        }
+
+        public long getTimeMillis() {
+            return this.timeMillis;
+        }
+
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        public String getMessage() {
+            return this.message;
+        }
+
+        @Override
+        public String toString() {
+            return this.kind + ": " + this.message;
+        }
+    }
+}
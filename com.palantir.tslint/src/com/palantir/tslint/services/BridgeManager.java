@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.Hashing;
+
+/**
+ * Hands out bridge pools keyed by their configuration so that everyone using the same
+ * configuration shares the same node processes.
+ * <p>
+ * Pools are reference counted and disposed as soon as nobody uses them anymore. The total number
+ * of node processes across all pools is capped.
+ */
+public final class BridgeManager {
+
+    private final File bridgeFile;
+    private final int maximumBridgeCount;
+    private final Semaphore bridgePermits;
+    private final long idleTimeoutMillis;
+    private final Map<String, BridgePool> pools;
+    private final Multiset<BridgePool> references;
+
+    public BridgeManager(File bridgeFile) {
+        this(bridgeFile, Runtime.getRuntime().availableProcessors(), Bridge.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param bridgeFile the script which node runs, normally bin/bridge.js
+     * @param maximumBridgeCount the maximum number of node processes across all pools
+     * @param idleTimeoutMillis how long a node process may be idle before it is stopped, see
+     *            {@link Bridge#Bridge(File, long)}
+     */
+    public BridgeManager(File bridgeFile, int maximumBridgeCount, long idleTimeoutMillis) {
+        checkNotNull(bridgeFile);
+        checkArgument(maximumBridgeCount > 0);
+        checkArgument(idleTimeoutMillis >= 0);
+
+        this.bridgeFile = bridgeFile;
+        this.maximumBridgeCount = maximumBridgeCount;
+        this.bridgePermits = new Semaphore(maximumBridgeCount);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.pools = Maps.newHashMap();
+        this.references = HashMultiset.create();
+    }
+
+    /**
+     * Returns the pool for the given configuration, which must be released once it's no longer
+     * needed.
+     */
+    public synchronized BridgePool acquire(String configuration) {
+        checkNotNull(configuration);
+
+        String key = getKey(configuration);
+        BridgePool pool = this.pools.get(key);
+        if (pool == null) {
+            pool = new BridgePool(this.bridgeFile, this.maximumBridgeCount, this.bridgePermits, this.idleTimeoutMillis);
+            pool.setConfiguration(configuration);
+            this.pools.put(key, pool);
+        }
+
+        this.references.add(pool);
+
+        return pool;
+    }
+
+    /**
+     * Trades a reference to a pool for a reference to the pool of a new configuration.
+     * <p>
+     * If nobody else uses the pool and no pool has the new configuration yet, the pool is
+     * reconfigured in place instead of starting new node processes.
+     */
+    public synchronized BridgePool reconfigure(BridgePool pool, String configuration) {
+        checkNotNull(pool);
+        checkNotNull(configuration);
+        checkState(this.references.contains(pool));
+
+        String key = getKey(configuration);
+        if (this.references.count(pool) == 1 && !this.pools.containsKey(key)) {
+            this.pools.values().remove(pool);
+            pool.setConfiguration(configuration);
+            this.pools.put(key, pool);
+
+            return pool;
+        }
+
+        BridgePool newPool = this.acquire(configuration);
+        this.release(pool);
+
+        return newPool;
+    }
+
+    public synchronized void release(BridgePool pool) {
+        checkNotNull(pool);
+        checkState(this.references.contains(pool));
+
+        this.references.remove(pool);
+
+        if (!this.references.contains(pool)) {
+            this.pools.values().remove(pool);
+            pool.dispose();
+        }
+    }
+
+    public synchronized void dispose() {
+        for (BridgePool pool : this.pools.values()) {
+            pool.dispose();
+        }
+
+        this.pools.clear();
+        this.references.clear();
+    }
+
+    private static String getKey(String configuration) {
+        return Hashing.sha1().hashString(configuration, Charsets.UTF_8).toString();
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * A bounded pool of bridges which all share the same configuration.
+ * <p>
+ * Bridges are started lazily: a new node process is only spawned when every running bridge already
+ * has requests in flight and the pool has not yet reached its maximum size. Otherwise requests are
+ * handed to the bridge with the fewest pending requests.
+ * <p>
+ * Pools can share a limit on the total number of node processes. Every bridge holds a permit of
+ * the limit, so a pool without bridges waits for another pool to give one back before it handles
+ * a request. Bridges whose node process was stopped for being idle are dropped from their pool,
+ * which gives their permit back.
+ * <p>
+ * Requests are handed to a bridge under the pool's lock, so that a bridge is never dropped between
+ * being picked for a request and receiving it.
+ * <p>
+ * Requests which build on state kept by an earlier request, such as the contents of an editor, can
+ * be given an affinity key so that they go to the same bridge as long as the pool doesn't grow.
+ */
+public final class BridgePool {
+
+    // permits are given back by other pools, which can't wake up this one
+    private static final long PERMIT_POLL_MILLIS = 100;
+
+    private final File bridgeFile;
+    private final int maximumSize;
+    private final Semaphore bridgePermits;
+    private final long idleTimeoutMillis;
+    private final List<Bridge> bridges;
+
+    private String configuration;
+    private int configurationVersion;
+    private int heldBridgePermits;
+    private boolean disposed;
+
+    public BridgePool(File bridgeFile) {
+        this(bridgeFile, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BridgePool(File bridgeFile, int maximumSize) {
+        this(bridgeFile, maximumSize, new Semaphore(maximumSize), Bridge.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Creates a pool whose bridges count against a limit shared with other pools.
+     *
+     * @param bridgePermits one permit for each node process which may still be started
+     * @param idleTimeoutMillis how long a node process may be idle before it is stopped, see
+     *            {@link Bridge#Bridge(File, long)}
+     */
+    public BridgePool(File bridgeFile, int maximumSize, Semaphore bridgePermits, long idleTimeoutMillis) {
+        checkNotNull(bridgeFile);
+        checkArgument(maximumSize > 0);
+        checkNotNull(bridgePermits);
+        checkArgument(idleTimeoutMillis >= 0);
+
+        this.bridgeFile = bridgeFile;
+        this.maximumSize = maximumSize;
+        this.bridgePermits = bridgePermits;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.bridges = Lists.newArrayList();
+    }
+
+    /**
+     * Sets the TSLint configuration on every bridge in the pool, including the ones started later.
+     * <p>
+     * Running bridges are reconfigured in place. Since each bridge handles its requests in order,
+     * every request made after this call is linted with the new configuration.
+     */
+    public synchronized void setConfiguration(String configuration) {
+        checkNotNull(configuration);
+
+        this.configuration = configuration;
+        this.configurationVersion++;
+
+        for (Bridge bridge : this.bridges) {
+            bridge.configure(this.createConfigurationRequest());
+        }
+    }
+
+    public synchronized int getConfigurationVersion() {
+        return this.configurationVersion;
+    }
+
+    public <T> T call(Request request, Class<T> resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
+        return Bridge.getResult(this.callAsync(request, resultType));
+    }
+
+    public <T> T call(Request request, JavaType resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
+        return Bridge.getResult(this.<T> callAsync(request, resultType));
+    }
+
+    public <T> T call(Request request, ResultParser<T> resultParser) {
+        checkNotNull(request);
+        checkNotNull(resultParser);
+
+        return Bridge.getResult(this.callAsync(request, resultParser));
+    }
+
+    public synchronized <T> ListenableFuture<T> callAsync(Request request, Class<T> resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
+        return this.getBridge().callAsync(request, resultType);
+    }
+
+    public synchronized <T> ListenableFuture<T> callAsync(Request request, JavaType resultType) {
+        checkNotNull(request);
+        checkNotNull(resultType);
+
+        return this.getBridge().callAsync(request, resultType);
+    }
+
+    public synchronized <T> ListenableFuture<T> callAsync(Request request, ResultParser<T> resultParser) {
+        checkNotNull(request);
+        checkNotNull(resultParser);
+
+        return this.getBridge().callAsync(request, resultParser);
+    }
+
+    /**
+     * Sends the request to the bridge which handles the given key, rather than to the least loaded
+     * bridge.
+     */
+    public synchronized <T> ListenableFuture<T> callAsync(String affinityKey, Request request, ResultParser<T> resultParser) {
+        checkNotNull(affinityKey);
+        checkNotNull(request);
+        checkNotNull(resultParser);
+
+        return this.getBridge(affinityKey).callAsync(request, resultParser);
+    }
+
+    /**
+     * Starts the first bridge of the pool, unless one is running already, and has it lint a small
+     * snippet so that TSLint, TypeScript and the rules of the configuration are loaded and compiled
+     * before the first real request.
+     */
+    public void warmUp() {
+        ListenableFuture<Void> future;
+        synchronized (this) {
+            if (!this.bridges.isEmpty()) {
+                return;
+            }
+
+            future = this.getBridge().callAsync(new Request("warmUp"), Void.class);
+        }
+
+        Bridge.getResult(future);
+    }
+
+    public int getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    public synchronized void dispose() {
+        this.disposed = true;
+
+        for (Bridge bridge : this.bridges) {
+            bridge.dispose();
+        }
+
+        this.bridges.clear();
+
+        this.bridgePermits.release(this.heldBridgePermits);
+        this.heldBridgePermits = 0;
+    }
+
+    /**
+     * Drops a bridge whose node process was stopped for being idle, and gives its permit back so
+     * that other pools can use it.
+     */
+    private synchronized void bridgeIdle(Bridge bridge) {
+        // a request may have restarted the node process in the meantime
+        if (bridge.isRunning() || !this.bridges.remove(bridge)) {
+            return;
+        }
+
+        bridge.dispose();
+
+        this.bridgePermits.release();
+        this.heldBridgePermits--;
+    }
+
+    private Bridge getBridge() {
+        checkState(!this.disposed, "The bridge pool has been disposed.");
+
+        Bridge leastLoadedBridge = null;
+        int leastPendingRequests = Integer.MAX_VALUE;
+
+        for (Bridge bridge : this.bridges) {
+            int pendingRequests = bridge.getPendingRequestCount();
+
+            if (pendingRequests < leastPendingRequests) {
+                leastLoadedBridge = bridge;
+                leastPendingRequests = pendingRequests;
+            }
+        }
+
+        // only start another node process if all of the existing ones are busy
+        if (leastLoadedBridge == null) {
+            this.acquirePermit();
+
+            // the bridges may have changed while the lock was given up
+            return this.bridges.isEmpty() ? this.startBridge() : this.returnPermit(this.bridges.get(0));
+        } else if (leastPendingRequests > 0 && this.bridges.size() < this.maximumSize) {
+            if (!this.bridgePermits.tryAcquire()) {
+                // other pools are using up the shared limit
+                return leastLoadedBridge;
+            }
+
+            this.heldBridgePermits++;
+            leastLoadedBridge = this.startBridge();
+        }
+
+        return leastLoadedBridge;
+    }
+
+    /**
+     * Waits for a permit, giving up the pool's lock in the meantime so that the pool can still be
+     * disposed and its idle bridges dropped.
+     */
+    private void acquirePermit() {
+        try {
+            while (!this.bridgePermits.tryAcquire()) {
+                this.wait(PERMIT_POLL_MILLIS);
+                checkState(!this.disposed, "The bridge pool has been disposed.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        this.heldBridgePermits++;
+    }
+
+    private Bridge returnPermit(Bridge bridge) {
+        this.bridgePermits.release();
+        this.heldBridgePermits--;
+
+        return bridge;
+    }
+
+    private Bridge getBridge(String affinityKey) {
+        if (this.bridges.isEmpty()) {
+            return this.getBridge();
+        }
+
+        int index = (affinityKey.hashCode() & Integer.MAX_VALUE) % this.bridges.size();
+
+        return this.bridges.get(index);
+    }
+
+    private Bridge startBridge() {
+        final Bridge bridge = new Bridge(this.bridgeFile, this.idleTimeoutMillis);
+        this.bridges.add(bridge);
+
+        bridge.setIdleListener(new Runnable() {
+            @Override
+            public void run() {
+                bridgeIdle(bridge);
+            }
+        });
+
+        if (this.configuration != null) {
+            bridge.configure(this.createConfigurationRequest());
+        }
+
+        return bridge;
+    }
+
+    private Request createConfigurationRequest() {
+        return new Request("setConfiguration", this.configuration, this.configurationVersion);
+    }
+}
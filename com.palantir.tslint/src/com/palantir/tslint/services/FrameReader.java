@@ -0,0 +1,148 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Reads the frames which the bridge writes to its stdout.
+ * <p>
+ * A frame starts with its type, a single byte, and the length of its payload, a big-endian int.
+ * The payload of a result starts with the request id, the time node spent on the request in
+ * microseconds and the resident set size of the process in bytes, each a big-endian long, followed
+ * by the result as UTF-8 encoded JSON. The payload of an error starts with the request id followed
+ * by the error message, and the payload of a log frame is just the message.
+ * <p>
+ * Payloads are read in bulk into a buffer which is reused for the next frame, so each frame has to
+ * be consumed before the next one is read.
+ */
+final class FrameReader {
+
+    public static final byte RESULT = 'R';
+    public static final byte ERROR = 'E';
+    public static final byte LOG = 'L';
+
+    private static final int HEADER_LENGTH = 5;
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    // a buffer which grew past this for a huge result is dropped again afterwards
+    private static final int RETAINED_CAPACITY = 1024 * 1024;
+
+    private final InputStream in;
+    private final byte[] header;
+
+    private byte[] buffer;
+    private byte type;
+    private int length;
+
+    public FrameReader(InputStream in) {
+        checkNotNull(in);
+
+        this.in = in;
+        this.header = new byte[HEADER_LENGTH];
+        this.buffer = new byte[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Reads the next frame.
+     *
+     * @return false if the stream ended
+     */
+    public boolean next() throws IOException {
+        int headerRead = read(this.header, 0, HEADER_LENGTH);
+        if (headerRead == 0) {
+            return false;
+        }
+        if (headerRead < HEADER_LENGTH) {
+            throw new EOFException("The stream ended in the middle of a frame header");
+        }
+
+        this.type = this.header[0];
+        this.length = getInt(this.header, 1);
+        if (this.length < 0) {
+            throw new IOException("Invalid frame length: " + this.length);
+        }
+
+        if (this.length > this.buffer.length) {
+            this.buffer = new byte[Math.max(this.length, this.buffer.length * 2)];
+        } else if (this.buffer.length > RETAINED_CAPACITY && this.length <= INITIAL_CAPACITY) {
+            this.buffer = new byte[INITIAL_CAPACITY];
+        }
+
+        if (read(this.buffer, 0, this.length) < this.length) {
+            throw new EOFException("The stream ended in the middle of a frame");
+        }
+
+        return true;
+    }
+
+    public byte getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the buffer holding the payload of the current frame, which starts at offset 0.
+     */
+    public byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public long getLong(int offset) {
+        checkArgument(offset >= 0 && offset + 8 <= this.length);
+
+        return ((long) getInt(this.buffer, offset) << 32) | (getInt(this.buffer, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    public String getString(int offset) {
+        checkArgument(offset >= 0 && offset <= this.length);
+
+        return new String(this.buffer, offset, this.length - offset, Charsets.UTF_8);
+    }
+
+    private int read(byte[] bytes, int offset, int length) throws IOException {
+        int total = 0;
+
+        while (total < length) {
+            int read = this.in.read(bytes, offset + total, length - total);
+            if (read < 0) {
+                break;
+            }
+
+            total += read;
+        }
+
+        return total;
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24)
+                | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8)
+                | (bytes[offset + 3] & 0xFF);
+    }
+}
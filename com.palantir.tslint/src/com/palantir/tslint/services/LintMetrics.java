@@ -0,0 +1,302 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Instrumentation of the linting done through the bridges of this JVM.
+ * <p>
+ * The bridges record the round-trip time of each request along with the time node spent on it, so
+ * the two can be compared to see how much is lost in the pipes and in node's queue. The callers of
+ * the bridges record how many files were linted in how long. Everything else is read from the
+ * live bridges when asked for.
+ */
+public final class LintMetrics implements LintMetricsMXBean {
+
+    private static final LintMetrics DEFAULT = new LintMetrics();
+
+    private final Set<Bridge> bridges;
+    private final LatencyHistogram batchAverageFileLatencies;
+    private final LatencyHistogram roundTrips;
+    private final LatencyHistogram nodeTimes;
+    private final RateMeter requests;
+    private final RateMeter ruleFailures;
+    private final AtomicLong fileCount;
+    private final AtomicLong requestErrorCount;
+    private final AtomicLong restartCount;
+    private final AtomicLong crashCount;
+
+    private LintMetrics() {
+        this.bridges = Sets.newSetFromMap(new ConcurrentHashMap<Bridge, Boolean>());
+        this.batchAverageFileLatencies = new LatencyHistogram();
+        this.roundTrips = new LatencyHistogram();
+        this.nodeTimes = new LatencyHistogram();
+        this.requests = new RateMeter();
+        this.ruleFailures = new RateMeter();
+        this.fileCount = new AtomicLong();
+        this.requestErrorCount = new AtomicLong();
+        this.restartCount = new AtomicLong();
+        this.crashCount = new AtomicLong();
+    }
+
+    public static LintMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records that the given files were linted, with the time from sending them to the bridge to
+     * having their results. Node doesn't time the files of a batch one by one, so the time is spread
+     * evenly across them, see {@link #getBatchAverageFileLatencyP50Millis()}.
+     */
+    public void filesLinted(int fileCount, long nanos, int ruleFailureCount) {
+        checkArgument(fileCount > 0);
+        checkArgument(ruleFailureCount >= 0);
+
+        long microsPerFile = TimeUnit.NANOSECONDS.toMicros(nanos) / fileCount;
+        for (int i = 0; i < fileCount; i++) {
+            this.batchAverageFileLatencies.record(microsPerFile);
+        }
+
+        this.fileCount.addAndGet(fileCount);
+        this.ruleFailures.mark(ruleFailureCount);
+    }
+
+    @Override
+    public double getBatchAverageFileLatencyP50Millis() {
+        return toMillis(this.batchAverageFileLatencies.getPercentile(0.50));
+    }
+
+    @Override
+    public double getBatchAverageFileLatencyP95Millis() {
+        return toMillis(this.batchAverageFileLatencies.getPercentile(0.95));
+    }
+
+    @Override
+    public double getBatchAverageFileLatencyP99Millis() {
+        return toMillis(this.batchAverageFileLatencies.getPercentile(0.99));
+    }
+
+    @Override
+    public double getRoundTripP50Millis() {
+        return toMillis(this.roundTrips.getPercentile(0.50));
+    }
+
+    @Override
+    public double getRoundTripP95Millis() {
+        return toMillis(this.roundTrips.getPercentile(0.95));
+    }
+
+    @Override
+    public double getRoundTripP99Millis() {
+        return toMillis(this.roundTrips.getPercentile(0.99));
+    }
+
+    @Override
+    public double getNodeTimeP50Millis() {
+        return toMillis(this.nodeTimes.getPercentile(0.50));
+    }
+
+    @Override
+    public double getNodeTimeP95Millis() {
+        return toMillis(this.nodeTimes.getPercentile(0.95));
+    }
+
+    @Override
+    public double getNodeTimeP99Millis() {
+        return toMillis(this.nodeTimes.getPercentile(0.99));
+    }
+
+    @Override
+    public long getFileCount() {
+        return this.fileCount.get();
+    }
+
+    @Override
+    public long getRequestCount() {
+        return this.requests.getCount();
+    }
+
+    @Override
+    public double getRequestRate() {
+        return this.requests.getRate();
+    }
+
+    @Override
+    public long getRequestErrorCount() {
+        return this.requestErrorCount.get();
+    }
+
+    @Override
+    public long getRuleFailureCount() {
+        return this.ruleFailures.getCount();
+    }
+
+    @Override
+    public double getRuleFailureRate() {
+        return this.ruleFailures.getRate();
+    }
+
+    @Override
+    public int getInFlightRequestCount() {
+        int count = 0;
+        for (Bridge bridge : this.bridges) {
+            count += bridge.getPendingRequestCount();
+        }
+
+        return count;
+    }
+
+    @Override
+    public int getQueuedRequestCount() {
+        int count = 0;
+
+        // node works on one request at a time, the others wait in its queue
+        for (Bridge bridge : this.bridges) {
+            count += Math.max(0, bridge.getPendingRequestCount() - 1);
+        }
+
+        return count;
+    }
+
+    @Override
+    public int getBridgeCount() {
+        return this.bridges.size();
+    }
+
+    @Override
+    public int getNodeProcessCount() {
+        int count = 0;
+        for (Bridge bridge : this.bridges) {
+            if (bridge.isRunning()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public long getNodeProcessRestartCount() {
+        return this.restartCount.get();
+    }
+
+    @Override
+    public long getNodeProcessCrashCount() {
+        return this.crashCount.get();
+    }
+
+    @Override
+    public long getNodeProcessResidentBytes() {
+        long residentBytes = 0;
+        for (Bridge bridge : this.bridges) {
+            residentBytes += bridge.getResidentBytes();
+        }
+
+        return residentBytes;
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("files: %d (batch average p50 %.1fms, p95 %.1fms, p99 %.1fms), "
+                + "requests: %d (%.1f/s, p50 %.1fms, p95 %.1fms, p99 %.1fms, node p50 %.1fms, p95 %.1fms, p99 %.1fms), "
+                + "errors: %d, rule failures: %d (%.1f/s), in flight: %d, queued: %d, "
+                + "node processes: %d of %d bridges (%d MB, %d restarts, %d crashes)",
+            this.getFileCount(),
+            this.getBatchAverageFileLatencyP50Millis(),
+            this.getBatchAverageFileLatencyP95Millis(),
+            this.getBatchAverageFileLatencyP99Millis(),
+            this.getRequestCount(),
+            this.getRequestRate(),
+            this.getRoundTripP50Millis(),
+            this.getRoundTripP95Millis(),
+            this.getRoundTripP99Millis(),
+            this.getNodeTimeP50Millis(),
+            this.getNodeTimeP95Millis(),
+            this.getNodeTimeP99Millis(),
+            this.getRequestErrorCount(),
+            this.getRuleFailureCount(),
+            this.getRuleFailureRate(),
+            this.getInFlightRequestCount(),
+            this.getQueuedRequestCount(),
+            this.getNodeProcessCount(),
+            this.getBridgeCount(),
+            this.getNodeProcessResidentBytes() / (1024 * 1024),
+            this.getNodeProcessRestartCount(),
+            this.getNodeProcessCrashCount());
+    }
+
+    @Override
+    public void reset() {
+        this.batchAverageFileLatencies.reset();
+        this.roundTrips.reset();
+        this.nodeTimes.reset();
+        this.requests.reset();
+        this.ruleFailures.reset();
+        this.fileCount.set(0);
+        this.requestErrorCount.set(0);
+        this.restartCount.set(0);
+        this.crashCount.set(0);
+    }
+
+    void bridgeCreated(Bridge bridge) {
+        this.bridges.add(checkNotNull(bridge));
+    }
+
+    void bridgeDisposed(Bridge bridge) {
+        this.bridges.remove(checkNotNull(bridge));
+    }
+
+    void nodeProcessRestarted() {
+        this.restartCount.incrementAndGet();
+    }
+
+    void nodeProcessCrashed() {
+        this.crashCount.incrementAndGet();
+    }
+
+    /**
+     * Records a request the bridge answered.
+     *
+     * @param nodeMicros the time node spent on the request, or -1 if the bridge didn't say
+     */
+    void requestCompleted(long roundTripNanos, long nodeMicros) {
+        this.requests.mark(1);
+        this.roundTrips.record(TimeUnit.NANOSECONDS.toMicros(roundTripNanos));
+
+        if (nodeMicros >= 0) {
+            this.nodeTimes.record(nodeMicros);
+        }
+    }
+
+    void requestFailed() {
+        this.requests.mark(1);
+        this.requestErrorCount.incrementAndGet();
+    }
+
+    private static double toMillis(long micros) {
+        return micros / 1000.0;
+    }
+}
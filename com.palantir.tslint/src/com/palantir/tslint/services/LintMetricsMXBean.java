@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+/**
+ * The management interface of {@link LintMetrics}, for JConsole and other JMX clients.
+ * <p>
+ * Latencies are in milliseconds and rates are per second, averaged over about a minute.
+ */
+public interface LintMetricsMXBean {
+
+    /**
+     * Returns the median of the round-trip time of each batch of files divided by its number of
+     * files, recorded once for each file. Node only reports its time for a whole request, so this
+     * is a batch average rather than the latency of any one file. The same goes for the p95 and p99.
+     */
+    double getBatchAverageFileLatencyP50Millis();
+
+    double getBatchAverageFileLatencyP95Millis();
+
+    double getBatchAverageFileLatencyP99Millis();
+
+    double getRoundTripP50Millis();
+
+    double getRoundTripP95Millis();
+
+    double getRoundTripP99Millis();
+
+    double getNodeTimeP50Millis();
+
+    double getNodeTimeP95Millis();
+
+    double getNodeTimeP99Millis();
+
+    long getFileCount();
+
+    long getRequestCount();
+
+    double getRequestRate();
+
+    long getRequestErrorCount();
+
+    long getRuleFailureCount();
+
+    double getRuleFailureRate();
+
+    int getInFlightRequestCount();
+
+    int getQueuedRequestCount();
+
+    int getBridgeCount();
+
+    int getNodeProcessCount();
+
+    long getNodeProcessRestartCount();
+
+    long getNodeProcessCrashCount();
+
+    long getNodeProcessResidentBytes();
+
+    String getSummary();
+
+    void reset();
+}
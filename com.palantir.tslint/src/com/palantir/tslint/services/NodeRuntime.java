@@ -0,0 +1,261 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.CharStreams;
+
+/**
+ * Finds the Node.js executable and starts node processes with it.
+ * <p>
+ * Finding node means looking through every directory on the PATH and running node to ask for its
+ * version, so the installation which was found is kept, and can be handed over from a previous
+ * session with {@link #setInstallation(Installation)}. It's used for as long as neither the PATH
+ * nor the executable changed, which only takes a look at its modification time.
+ * <p>
+ * Versions of node which have a compile cache are pointed at the directory given by
+ * {@link #setCompileCacheDirectory(File)}, so that TSLint and TypeScript don't have to be compiled
+ * again every time a node process starts.
+ */
+public final class NodeRuntime {
+
+    private static final NodeRuntime DEFAULT = new NodeRuntime();
+
+    private static final String OS_NAME = System.getProperty("os.name");
+    private static final Splitter PATH_SPLITTER = Splitter.on(File.pathSeparatorChar);
+    private static final Pattern VERSION_PATTERN = Pattern.compile("v?(\\d+)\\.(\\d+)");
+
+    // NODE_COMPILE_CACHE was added in node 22.1
+    private static final int COMPILE_CACHE_MAJOR_VERSION = 22;
+    private static final int COMPILE_CACHE_MINOR_VERSION = 1;
+    private static final String COMPILE_CACHE_VARIABLE = "NODE_COMPILE_CACHE";
+
+    private Installation installation;
+    private File compileCacheDirectory;
+
+    private NodeRuntime() {
+        // only the default instance is used
+    }
+
+    public static NodeRuntime getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets the installation found in a previous session, which is used instead of searching for
+     * node again as long as it's still current.
+     */
+    public synchronized void setInstallation(Installation installation) {
+        checkNotNull(installation);
+
+        this.installation = installation;
+    }
+
+    /**
+     * Returns the installation of node, searching for it if the one found before has changed.
+     *
+     * @throws IllegalStateException if node can't be found
+     */
+    public synchronized Installation getInstallation() {
+        if (this.installation == null || !this.installation.isCurrent()) {
+            this.installation = findInstallation();
+        }
+
+        return this.installation;
+    }
+
+    /**
+     * Sets the directory where node keeps the compiled code of the modules it loads, or null to
+     * leave it to the environment.
+     */
+    public synchronized void setCompileCacheDirectory(File compileCacheDirectory) {
+        this.compileCacheDirectory = compileCacheDirectory;
+    }
+
+    /**
+     * Creates a process builder which runs node with the given arguments.
+     */
+    public ProcessBuilder createProcessBuilder(List<String> arguments) {
+        checkNotNull(arguments);
+
+        Installation installation = this.getInstallation();
+
+        List<String> command = Lists.newArrayList();
+        command.add(installation.getFile().getAbsolutePath());
+        command.addAll(arguments);
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+
+        // a cache set up by the user takes precedence
+        File compileCacheDirectory = this.getCompileCacheDirectory();
+        if (compileCacheDirectory != null
+                && installation.isAtLeast(COMPILE_CACHE_MAJOR_VERSION, COMPILE_CACHE_MINOR_VERSION)
+                && !processBuilder.environment().containsKey(COMPILE_CACHE_VARIABLE)) {
+            processBuilder.environment().put(COMPILE_CACHE_VARIABLE, compileCacheDirectory.getAbsolutePath());
+        }
+
+        return processBuilder;
+    }
+
+    private synchronized File getCompileCacheDirectory() {
+        return this.compileCacheDirectory;
+    }
+
+    private static Installation findInstallation() {
+        File nodeFile = findNode();
+
+        return new Installation(nodeFile, getVersion(nodeFile), nodeFile.lastModified(), getPath());
+    }
+
+    private static File findNode() {
+        String nodeFileName = getNodeFileName();
+        List<String> directories = Lists.newArrayList(PATH_SPLITTER.split(getPath()));
+
+        // ensure /usr/local/bin is included for OS X
+        if (OS_NAME.startsWith("Mac OS X")) {
+            directories.add("/usr/local/bin");
+        }
+
+        // search for Node.js in the PATH directories
+        for (String directory : directories) {
+            File nodeFile = new File(directory, nodeFileName);
+
+            if (nodeFile.isFile()) {
+                return nodeFile;
+            }
+        }
+
+        throw new IllegalStateException("Could not find Node.js.");
+    }
+
+    private static String getPath() {
+        String path = System.getenv("PATH");
+
+        return path != null ? path : "";
+    }
+
+    private static String getNodeFileName() {
+        if (OS_NAME.startsWith("Windows")) {
+            return "node.exe";
+        }
+
+        return "node";
+    }
+
+    /**
+     * Returns the version node reports, such as "v22.3.0", or an empty string if it doesn't say.
+     */
+    private static String getVersion(File nodeFile) {
+        ProcessBuilder processBuilder = new ProcessBuilder(ImmutableList.of(nodeFile.getAbsolutePath(), "--version"));
+        processBuilder.redirectErrorStream(true);
+
+        try {
+            Process process = processBuilder.start();
+            try {
+                process.getOutputStream().close();
+                String output = CharStreams.toString(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+
+                return process.waitFor() == 0 ? output.trim() : "";
+            } finally {
+                process.destroy();
+            }
+        } catch (IOException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    /**
+     * A Node.js executable, its version and the PATH it was found on.
+     */
+    public static final class Installation {
+
+        private final File file;
+        private final String version;
+        private final long lastModified;
+        private final String path;
+
+        /**
+         * @param lastModified the modification time of the executable when its version was read
+         * @param path the PATH it was found on
+         */
+        public Installation(File file, String version, long lastModified, String path) {
+            checkNotNull(file);
+            checkNotNull(version);
+            checkNotNull(path);
+
+            this.file = file;
+            this.version = version;
+            this.lastModified = lastModified;
+            this.path = path;
+        }
+
+        public File getFile() {
+            return this.file;
+        }
+
+        public String getVersion() {
+            return this.version;
+        }
+
+        public long getLastModified() {
+            return this.lastModified;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        /**
+         * Returns true if node would still be found here, and the executable is still the one whose
+         * version was read.
+         */
+        public boolean isCurrent() {
+            return this.path.equals(NodeRuntime.getPath())
+                    && this.file.isFile()
+                    && this.file.lastModified() == this.lastModified;
+        }
+
+        /**
+         * Returns true if the version is known and at least the given one.
+         */
+        public boolean isAtLeast(int majorVersion, int minorVersion) {
+            Matcher matcher = VERSION_PATTERN.matcher(this.version);
+            if (!matcher.lookingAt()) {
+                return false;
+            }
+
+            int major = Integer.parseInt(matcher.group(1));
+            int minor = Integer.parseInt(matcher.group(2));
+
+            return major > majorVersion || (major == majorVersion && minor >= minorVersion);
+        }
+    }
+}
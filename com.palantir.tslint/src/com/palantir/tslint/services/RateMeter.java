@@ -0,0 +1,94 @@
+/*
+ * Copyright 2013 Palantir Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.palantir.tslint.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and estimates their rate per second over roughly the last minute, as an
+ * exponentially weighted moving average updated every few seconds.
+ */
+final class RateMeter {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+
+    private final AtomicLong count;
+
+    // guarded by this
+    private long uncounted;
+    private long lastTickNanos;
+    private double rate;
+    private boolean initialized;
+
+    public RateMeter() {
+        this.count = new AtomicLong();
+        this.lastTickNanos = System.nanoTime();
+    }
+
+    public void mark(long events) {
+        this.count.addAndGet(events);
+
+        synchronized (this) {
+            this.tick();
+            this.uncounted += events;
+        }
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    public synchronized double getRate() {
+        this.tick();
+
+        return this.rate;
+    }
+
+    public synchronized void reset() {
+        this.count.set(0);
+        this.uncounted = 0;
+        this.lastTickNanos = System.nanoTime();
+        this.rate = 0;
+        this.initialized = false;
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+
+        // catch up on the ticks which passed without any events
+        while (now - this.lastTickNanos >= TICK_NANOS) {
+            double tickRate = this.uncounted / (double) TimeUnit.NANOSECONDS.toSeconds(TICK_NANOS);
+            this.uncounted = 0;
+            this.lastTickNanos += TICK_NANOS;
+
+            if (this.initialized) {
+                this.rate += ALPHA * (tickRate - this.rate);
+            } else {
+                this.rate = tickRate;
+                this.initialized = true;
+            }
+
+            // after an hour or so of idling the average has decayed to nothing anyway
+            if (this.rate < 1e-9 && now - this.lastTickNanos >= TICK_NANOS) {
+                this.rate = 0;
+                this.lastTickNanos = now - (now - this.lastTickNanos) % TICK_NANOS;
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Objects;
@@ -32,6 +33,11 @@ import com.google.common.base.Objects;
  */
 public final class Request {
 
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    @JsonProperty("id")
+    private final long id;
+
     @JsonProperty("method")
     private final String method;
 
@@ -42,13 +48,29 @@ public final class Request {
         checkNotNull(method);
         checkNotNull(arguments);
 
+        this.id = NEXT_ID.incrementAndGet();
         this.method = method;
         this.arguments = Collections.unmodifiableList(Arrays.asList(arguments));
     }
 
+    /**
+     * Returns the identifier which the bridge echoes back with the response to this request.
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns an identical request with a new identifier, so that it can be sent again.
+     */
+    Request copy() {
+        return new Request(this.method, this.arguments.toArray());
+    }
+
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
+            .add("id", this.id)
             .add("method", this.method)
             .add("arguments", this.arguments)
             .toString();